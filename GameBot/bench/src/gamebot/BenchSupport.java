@@ -0,0 +1,135 @@
+package gamebot;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * Purpose: Fixtures and stand ins shared by the benchmarks so they run the real
+ * code paths offline. Fixtures are recorded API responses read from the
+ * bench.fixtures directory, and events are built on stub JDA entities that
+ * answer only what the dispatcher asks of them.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * FIXTURES             Directory the recorded responses are read from
+ *
+ */
+final class BenchSupport {
+    private static final String FIXTURES = System.getProperty("bench.fixtures", "bench/fixtures");
+
+    private BenchSupport(){
+    }
+
+    /**
+     * fixture - Reads a recorded response
+     * @param name - file name of the fixture
+     * @return byte[] - the response body
+     */
+    static byte[] fixture(String name) throws IOException{
+        return Files.readAllBytes(Paths.get(FIXTURES, name));
+    }
+
+    /**
+     * fortnitePlayer - Parses a recorded FortniteTracker profile the way a response is
+     * @param name - file name of the fixture
+     * @return FortnitePlayer - the players stats
+     */
+    static FortnitePlayer fortnitePlayer(String name) throws IOException{
+        byte[] body = fixture(name);
+        return FortniteStatsParser.parse(body, body.length);
+    }
+
+    /**
+     * event - Creates a message event for the given message
+     * @param content - the readable contents of the message
+     * @param bot - true if the author is a bot
+     * @return MessageReceivedEvent - event over stub entities
+     */
+    static MessageReceivedEvent event(String content, boolean bot){
+        User author = stub(User.class, (method) -> {
+            switch(method){
+                case "isBot":
+                    return bot;
+                case "getId":
+                    return "81234567890123456";
+                case "getIdLong":
+                    return 81234567890123456L;
+                case "getName":
+                    return "bench";
+                default:
+                    return null;
+            }
+        });
+        MessageChannel channel = stub(MessageChannel.class, (method) -> method.equals("getId") ? "1" : null);
+        Message message = stub(Message.class, (method) -> {
+            switch(method){
+                case "getContentDisplay":
+                case "getContentRaw":
+                    return content;
+                case "getAuthor":
+                    return author;
+                case "getChannel":
+                    return channel;
+                default:
+                    return null;
+            }
+        });
+        return new MessageReceivedEvent(null, 0, message);
+    }
+
+    /**
+     * Purpose: Answers a call on a stub by the name of the method called
+     */
+    private interface Answer {
+        Object answer(String method);
+    }
+
+    /**
+     * stub - Creates a stub of a JDA interface
+     * @param type - the interface to stub
+     * @param answer - Answer giving the result of each call
+     * @return T - the stub
+     */
+    private static <T> T stub(Class<T> type, Answer answer){
+        return type.cast(Proxy.newProxyInstance(BenchSupport.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch(method.getName()){
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return type.getSimpleName() + "Stub";
+                        default:
+                            Object result = answer.answer(method.getName());
+                            return result != null ? result : zero(method.getReturnType());
+                    }
+                }));
+    }
+
+    /**
+     * zero - Gets the value a stub gives for calls it does not answer, since
+     * primitives can not be null
+     * @param type - the return type of the call
+     * @return Object - zero or false for primitives, null for everything else
+     */
+    private static Object zero(Class<?> type){
+        if(type == boolean.class)
+            return false;
+        if(type == long.class)
+            return 0L;
+        if(type == int.class)
+            return 0;
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package gamebot;
+
+import java.util.concurrent.TimeUnit;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Purpose: Benchmarks the prefix check and argument parsing every message goes
+ * through. Most traffic is not a command and should leave at the prefix check,
+ * commands are split into arguments once in CommandArgs.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * message              Command line that is parsed, without the prefix check
+ * executor             CommandExecutor the dispatcher is built on, nothing is ran on it
+ * dispatcher           CommandDispatcher with the bots commands registered
+ * chatter              Event of a message that is not a command
+ * unknown              Event of a command that is not registered
+ * fromBot              Event of a command sent by a bot
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageParsingBenchmark {
+    @Param({"!lol StankBank Frank", "!fnCompare StankBank Frank;nickmercs:psn;Ninja:xbl;Tfue", "!roll 1000",
+        "!gimme \"a quoted noun\" and more"})
+    public String message;
+    private CommandExecutor executor;
+    private CommandDispatcher dispatcher;
+    private MessageReceivedEvent chatter;
+    private MessageReceivedEvent unknown;
+    private MessageReceivedEvent fromBot;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        executor = new CommandExecutor(1, 1);
+        dispatcher = new CommandDispatcher("!", executor);
+        new MyListener(null, null).registerCommands(dispatcher);
+        new FortniteListener(null).registerCommands(dispatcher);
+        new OsuListener().registerCommands(dispatcher);
+        chatter = BenchSupport.event("anyone up for some games tonight? " + message, false);
+        unknown = BenchSupport.event("!notACommand " + message.substring(message.indexOf(' ') + 1), false);
+        fromBot = BenchSupport.event(message, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public CommandArgs parseArgs(){
+        return CommandArgs.parse(message, message.indexOf(' '));
+    }
+
+    @Benchmark
+    public void restOfArgs(Blackhole hole){
+        CommandArgs args = CommandArgs.parse(message, message.indexOf(' '));
+        hole.consume(args.rest(0).toString());
+        for(CharSequence part : CommandArgs.split(args.rest(0), ';'))
+            hole.consume(part);
+    }
+
+    @Benchmark
+    public void dispatchChatter(){
+        dispatcher.onMessageReceived(chatter);
+    }
+
+    @Benchmark
+    public void dispatchUnknownCommand(){
+        dispatcher.onMessageReceived(unknown);
+    }
+
+    @Benchmark
+    public void dispatchFromBot(){
+        dispatcher.onMessageReceived(fromBot);
+    }
+}
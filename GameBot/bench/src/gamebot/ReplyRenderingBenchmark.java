@@ -0,0 +1,122 @@
+package gamebot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Purpose: Benchmarks turning recorded API responses into replies, from parsing
+ * the response body to the text that is sent back.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * SENTENCE             Sentence given to !reverse
+ *
+ * private
+ *
+ * fortnite             FortniteListener the stats are rendered with
+ * osu                  OsuListener the player info is rendered with
+ * profile              Recorded FortniteTracker profile response
+ * osuUser              Recorded osu! get_user response
+ * player               The parsed FortnitePlayer of profile
+ * pair                 ArrayList of the two players compared by !fnCompare
+ * group                ArrayList of the most players ranked by !fnCompare
+ * osuPlayer            The parsed JSONObject of osuUser
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplyRenderingBenchmark {
+    private static final String SENTENCE = "Stank Bank Frank dropped Tilted again and went zero kills, classic";
+    private FortniteListener fortnite;
+    private OsuListener osu;
+    private byte[] profile;
+    private byte[] osuUser;
+    private FortnitePlayer player;
+    private ArrayList<FortnitePlayer> pair;
+    private ArrayList<FortnitePlayer> group;
+    private JSONObject osuPlayer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException{
+        fortnite = new FortniteListener(null);
+        osu = new OsuListener();
+        profile = BenchSupport.fixture("fortnite-profile.json");
+        osuUser = BenchSupport.fixture("osu-user.json");
+        player = BenchSupport.fortnitePlayer("fortnite-profile.json");
+        FortnitePlayer other = BenchSupport.fortnitePlayer("fortnite-profile-2.json");
+        pair = new ArrayList<>();
+        pair.add(player);
+        pair.add(other);
+        group = new ArrayList<>();
+        for(int i = 0; i < 16; i++)
+            group.add(i % 2 == 0 ? player : other);
+        osuPlayer = ApiClient.parseArray(osuUser, osuUser.length).getJSONObject(0);
+    }
+
+    @Benchmark
+    public FortnitePlayer parseFortniteProfile() throws IOException{
+        return FortniteStatsParser.parse(profile, profile.length);
+    }
+
+    @Benchmark
+    public String fortniteGameModeStats(){
+        return fortnite.getGameModeStats(player, FortnitePlayer.Mode.LIFETIME);
+    }
+
+    @Benchmark
+    public String fortniteCurrentTotalStats(){
+        return fortnite.getCurrentTotalStats(player);
+    }
+
+    @Benchmark
+    public String fortniteLifetimeReply(){
+        //The whole !fnLifetime reply, lifetime then each overall mode
+        StringBuilder reply = new StringBuilder();
+        reply.append(fortnite.getGameModeStats(player, FortnitePlayer.Mode.LIFETIME)).append("\n\n");
+        for(FortnitePlayer.Mode mode : FortnitePlayer.Mode.values()){
+            if(mode != FortnitePlayer.Mode.LIFETIME && !mode.isCurrent())
+                reply.append(fortnite.getGameModeStats(player, mode)).append("\n\n");
+        }
+        return reply.toString();
+    }
+
+    @Benchmark
+    public String fortniteComparePair(){
+        return fortnite.comparePlayerStats(pair);
+    }
+
+    @Benchmark
+    public String fortniteRankGroup(){
+        return fortnite.rankPlayerStats(group);
+    }
+
+    @Benchmark
+    public String osuPlayerInfo(){
+        return osu.playerInfo(osuPlayer);
+    }
+
+    @Benchmark
+    public String osuParseAndRender(){
+        return osu.playerInfo(ApiClient.parseArray(osuUser, osuUser.length).getJSONObject(0));
+    }
+
+    @Benchmark
+    public String reverse(){
+        return MyListener.reverse(SENTENCE);
+    }
+}
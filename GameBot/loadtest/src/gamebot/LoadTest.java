@@ -0,0 +1,483 @@
+package gamebot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * Purpose: Load test for the bot that needs no API keys. Synthetic commands are
+ * sent at a fixed rate through the same dispatcher, listeners, caches and rate
+ * limiters the bot runs, while the game APIs are answered by a MockApiServer.
+ * Replies are timed instead of sent to Discord. At the end the throughput,
+ * reply latencies and what the rate limiters did are printed.
+ *
+ * Settings are given as key=value arguments and read like the bots own config:
+ *
+ * loadRate             Commands sent a second
+ * loadSeconds          Seconds commands are sent for
+ * loadDrainSeconds     Most seconds to wait for replies after the last command
+ * loadGuilds           Number of guilds the commands come from
+ * loadPlayers          Number of different player names asked for, fewer means more cache hits
+ * loadMissingPercent   Percent of commands asking for a player that does not exist
+ * loadMix              Commands sent and their weights, as command:weight,... Only
+ *                      commands in OFFLINE_COMMANDS can be used, the rest need League
+ *                      static data, which the load test pipeline has no source for
+ * loadFixtures         Directory of the recorded API responses
+ * loadDiskCache        true to keep Orianna's disk cache in the pipeline, in a new directory each run
+ * mockLatencyMillis, mockJitterMillis, mock429Percent, mockRetryAfterSeconds, mockPort
+ *                      See MockApiServer
+ *
+ * Any other bot setting, like fnRequestsPerSecond or commandThreads, can be
+ * given the same way.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * OFFLINE_COMMANDS     Commands answered by the mock alone. lol and lolRegion name champions,
+ *                      and with no DataDragon in the pipeline they can not be answered offline
+ *
+ * private final
+ *
+ * pending              ConcurrentHashMap of the channel of each command waiting on its reply
+ * replied              Number of commands that were replied to
+ * busy                 Number of commands turned away as busy
+ * timedOut             Number of commands that took too long
+ *
+ */
+public class LoadTest {
+    private static final Set<String> OFFLINE_COMMANDS = new LinkedHashSet<>(Arrays.asList(
+            "fnLifetime", "fnCurrent", "fnCompare", "osuPlayer", "lolRanks", "lolRanksRegion", "lolLive", "lolLiveRegion"));
+    private final Map<MessageChannel, Sent> pending = new ConcurrentHashMap<>();
+    private final LongAdder replied = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Purpose: A command that was sent and when
+     *
+     * Variables            Description
+     *
+     * command              The command name without the prefix
+     * sentAt               System.nanoTime the command was dispatched
+     */
+    private static final class Sent {
+        private final String command;
+        private final long sentAt;
+
+        private Sent(String command, long sentAt){
+            this.command = command;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * main - Runs a load test with the given settings
+     * @param args - settings as key=value
+     */
+    public static void main(String[] args) throws IOException{
+        for(String arg : args){
+            int equals = arg.indexOf('=');
+            if(equals < 1)
+                throw new IllegalArgumentException("Settings are given as key=value, not " + arg);
+            GameBot.config.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        //The mock has to be up before anything reads the base urls
+        String fixtures = GameBot.config.getProperty("loadFixtures", "bench/fixtures");
+        MockApiServer mock = new MockApiServer(GameBot.config, Files.readAllBytes(Paths.get(fixtures, "fortnite-profile.json")),
+                Files.readAllBytes(Paths.get(fixtures, "osu-user.json")));
+        mock.start();
+        Path cacheDir = null;
+        int status = 1;
+        //The mocks threads would keep the JVM up if the run failed without stopping it
+        try{
+            setDefault("fnBaseUrl", mock.getBaseUrl());
+            setDefault("osuBaseUrl", mock.getBaseUrl() + "/api/");
+            setDefault("riotBaseUrl", mock.getBaseUrl());
+            //Each run gets its own copy of the Orianna config so nothing is served from an earlier run
+            if(Boolean.parseBoolean(GameBot.config.getProperty("loadDiskCache", "false")))
+                cacheDir = Files.createTempDirectory("loadtest-riot-cache");
+            GameBot.config.setProperty("oriannaConfigPath", oriannaConfig(
+                    Paths.get(GameBot.config.getProperty("oriannaConfigPath", "loadtest/orianna-loadtest.json")), cacheDir).toString());
+            setDefault("riotDefaultRegion", "NORTH_AMERICA");
+            setDefault("prefix", "!");
+            setDefault("fnKey", "loadtest");
+            setDefault("osuKey", "loadtest");
+            setDefault("riotKey", "loadtest");
+            new LoadTest().run(mock);
+            status = 0;
+        }
+        catch(IOException | RuntimeException | Error ex){
+            Logger.getLogger(LoadTest.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        finally{
+            mock.stop();
+            try{
+                if(cacheDir != null)
+                    delete(cacheDir);
+            }
+            catch(IOException ex){
+                Logger.getLogger(LoadTest.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        System.exit(status);
+    }
+
+    /**
+     * oriannaConfig - Writes the Orianna config for one run. Without a cache
+     * directory the disk cache is left out of the pipeline, so every Riot call
+     * goes through the scheduler and rate limiter to the mock.
+     * @param path - the load test Orianna config
+     * @param cacheDir - new directory for the disk cache, null to leave it out
+     * @return Path - temp file holding the config for this run
+     */
+    private static Path oriannaConfig(Path path, Path cacheDir) throws IOException{
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode config = mapper.readTree(path.toFile());
+        Iterator<JsonNode> elements = config.path("pipeline").path("elements").iterator();
+        while(elements.hasNext()){
+            JsonNode element = elements.next();
+            if(!DiskCache.class.getName().equals(element.path("className").asText()))
+                continue;
+            if(cacheDir == null)
+                elements.remove();
+            else
+                ((ObjectNode)element.path("config")).put("directory", cacheDir.toString());
+        }
+        Path runConfig = Files.createTempFile("orianna-loadtest", ".json");
+        runConfig.toFile().deleteOnExit();
+        mapper.writeValue(runConfig.toFile(), config);
+        return runConfig;
+    }
+
+    /**
+     * delete - Deletes a directory and everything in it
+     * @param dir - the directory to delete
+     */
+    private static void delete(Path dir) throws IOException{
+        List<Path> paths = new ArrayList<>();
+        try(Stream<Path> walk = Files.walk(dir)){
+            walk.forEach(paths::add);
+        }
+        paths.sort(Comparator.reverseOrder());
+        for(Path entry : paths)
+            Files.deleteIfExists(entry);
+    }
+
+    /**
+     * run - Sends the commands, waits for the replies and prints the results
+     * @param mock - MockApiServer answering the APIs
+     */
+    private void run(MockApiServer mock){
+        List<String> mix = parseMix(GameBot.config.getProperty("loadMix",
+                "fnLifetime:3,fnCurrent:1,fnCompare:1,osuPlayer:3,lolRanks:2,lolLive:1"));
+        //Build the bot the way GameBot does, without Discord or the database
+        LeagueListener.setUpOrianna();
+        CommandExecutor executor = new CommandExecutor(Integer.parseInt(GameBot.config.getProperty("commandThreads", "8")),
+                Integer.parseInt(GameBot.config.getProperty("commandQueueSize", "100")));
+        try{
+            send(executor, mix, mock);
+        }
+        finally{
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * send - Sends the commands through a new dispatcher, waits for the replies and prints the results
+     * @param executor - CommandExecutor the commands run on
+     * @param mix - the commands to send, one entry per unit of weight
+     * @param mock - MockApiServer answering the APIs
+     */
+    private void send(CommandExecutor executor, List<String> mix, MockApiServer mock){
+        double rate = Double.parseDouble(GameBot.config.getProperty("loadRate", "20"));
+        long seconds = Long.parseLong(GameBot.config.getProperty("loadSeconds", "30"));
+        long drainSeconds = Long.parseLong(GameBot.config.getProperty("loadDrainSeconds", "30"));
+        int guilds = Integer.parseInt(GameBot.config.getProperty("loadGuilds", "10"));
+        int players = Integer.parseInt(GameBot.config.getProperty("loadPlayers", "200"));
+        double missingPercent = Double.parseDouble(GameBot.config.getProperty("loadMissingPercent", "5"));
+        String prefix = GameBot.config.getProperty("prefix");
+        CommandDispatcher dispatcher = new CommandDispatcher(prefix, executor);
+        //Uses are counted but never written
+        UsageTracker usage = new UsageTracker(null, TimeUnit.DAYS.toSeconds(1), Integer.MAX_VALUE);
+        new LeagueListener(usage).registerCommands(dispatcher);
+        new FortniteListener(usage).registerCommands(dispatcher);
+        new OsuListener().registerCommands(dispatcher);
+        Replies.setSender(this::reply);
+
+        System.out.printf("Sending %.1f commands/s for %ds from %d guilds, APIs at %s%n", rate, seconds, guilds, mock.getBaseUrl());
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long sent = 0;
+        long now;
+        //Commands are sent on a schedule no matter how fast replies come back
+        while((now = System.nanoTime()) < end){
+            long due = (long)((now - start) / 1e9 * rate);
+            for(; sent < due; sent++){
+                String command = mix.get(random.nextInt(mix.size()));
+                String content = prefix + command + " " + arguments(command, players, missingPercent, random);
+                MessageChannel channel = stub(MessageChannel.class, "1");
+                pending.put(channel, new Sent(command, System.nanoTime()));
+                dispatcher.onMessageReceived(event(content, channel, random.nextInt(guilds)));
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        long sendNanos = System.nanoTime() - start;
+        //Give the commands still running a chance to finish
+        long drainEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        while(!pending.isEmpty() && System.nanoTime() < drainEnd)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        long totalNanos = System.nanoTime() - start;
+        report(sent, sendNanos, totalNanos, mix, mock);
+    }
+
+    /**
+     * reply - Times the first reply to each command, in place of sending it to Discord
+     * @param channel - the channel of the command
+     * @param part - the reply
+     */
+    private void reply(MessageChannel channel, String part){
+        Sent sent = pending.remove(channel);
+        //Only the first part of a reply is timed
+        if(sent == null)
+            return;
+        long nanos = System.nanoTime() - sent.sentAt;
+        replied.increment();
+        if(part.startsWith("**Busy!**"))
+            busy.increment();
+        else if(part.contains("took too long to respond"))
+            timedOut.increment();
+        Metrics.recordNanos(Metrics.name("loadtest_reply_seconds", "command", sent.command), nanos);
+        Metrics.recordNanos("loadtest_reply_seconds", nanos);
+    }
+
+    /**
+     * report - Prints the results of the run
+     * @param sent - number of commands sent
+     * @param sendNanos - how long commands were sent for
+     * @param totalNanos - how long the run took with waiting for replies
+     * @param mix - the commands that were sent
+     * @param mock - MockApiServer that answered the APIs
+     */
+    private void report(long sent, long sendNanos, long totalNanos, List<String> mix, MockApiServer mock){
+        double sendSeconds = sendNanos / 1e9;
+        double totalSeconds = totalNanos / 1e9;
+        System.out.printf("%nSent %d commands in %.1fs (%.1f/s)%n", sent, sendSeconds, sent / sendSeconds);
+        System.out.printf("Replied to %d in %.1fs (%.1f/s), %d busy, %d timed out, %d never replied%n",
+                replied.sum(), totalSeconds, replied.sum() / totalSeconds, busy.sum(), timedOut.sum(), pending.size());
+
+        System.out.printf("%nReply latency (ms)%n%-16s %7s %9s %9s %9s %9s %9s%n", "command", "count", "p50", "p90", "p99", "p99.9", "max");
+        List<String> commands = new ArrayList<>();
+        for(String command : mix){
+            if(!commands.contains(command))
+                commands.add(command);
+        }
+        for(String command : commands)
+            printLatency(command, Metrics.histogram(Metrics.name("loadtest_reply_seconds", "command", command)));
+        printLatency("all", Metrics.histogram("loadtest_reply_seconds"));
+
+        System.out.printf("%nMock APIs%n%-16s %9s %9s%n", "upstream", "requests", "429s");
+        for(Map.Entry<String, MockApiServer.Upstream> entry : mock.getUpstreams().entrySet())
+            System.out.printf("%-16s %9d %9d%n", entry.getKey(), entry.getValue().getRequests(), entry.getValue().getThrottled());
+
+        //What the rate limiters, upstream calls and command queue did, straight from the bots metrics.
+        //Settings and empty gauges, like the queues of regions nobody asked for, are left out
+        System.out.printf("%nBot metrics%n");
+        for(String line : Metrics.scrape().split("\n")){
+            if(line.startsWith("rate_limit_permits_per_second") || line.endsWith(" 0.0"))
+                continue;
+            if(line.startsWith("rate_limit_") || line.startsWith("upstream_") || line.startsWith("command_queue")
+                    || line.startsWith("command_rejected") || line.startsWith("command_errors") || line.startsWith("command_timeouts")
+                    || line.startsWith("cache_hit_ratio") || line.startsWith("riot_pool"))
+                System.out.println(line);
+        }
+    }
+
+    /**
+     * printLatency - Prints one row of the latency table
+     * @param name - the row name
+     * @param histogram - Histogram of the reply latencies
+     */
+    private static void printLatency(String name, Metrics.Histogram histogram){
+        System.out.printf("%-16s %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, histogram.getCount(), histogram.getQuantileMillis(0.5),
+                histogram.getQuantileMillis(0.9), histogram.getQuantileMillis(0.99), histogram.getQuantileMillis(0.999),
+                histogram.getMaxMillis());
+    }
+
+    /**
+     * arguments - Makes up the arguments of a command
+     * @param command - the command name without the prefix
+     * @param players - number of different player names
+     * @param missingPercent - percent of players that do not exist
+     * @param random - the random source
+     * @return String - the arguments
+     */
+    private static String arguments(String command, int players, double missingPercent, ThreadLocalRandom random){
+        if(command.equals("fnCompare")){
+            StringBuilder names = new StringBuilder();
+            int count = 2 + random.nextInt(3);
+            for(int i = 0; i < count; i++){
+                if(i > 0)
+                    names.append(';');
+                names.append(player(players, missingPercent, random));
+            }
+            return names.toString();
+        }
+        return player(players, missingPercent, random);
+    }
+
+    /**
+     * player - Picks a player name
+     * @param players - number of different player names
+     * @param missingPercent - percent of players that do not exist
+     * @param random - the random source
+     * @return String - the name
+     */
+    private static String player(int players, double missingPercent, ThreadLocalRandom random){
+        if(random.nextDouble() * 100 < missingPercent)
+            return "missing " + random.nextInt(players);
+        return "Player " + random.nextInt(players);
+    }
+
+    /**
+     * parseMix - Reads the commands to send and their weights
+     * @param mix - commands as command:weight, separated by commas
+     * @return List - each command repeated by its weight, picked from at random
+     */
+    private static List<String> parseMix(String mix){
+        List<String> commands = new ArrayList<>();
+        for(CharSequence entry : CommandArgs.split(mix, ',')){
+            String command = entry.toString();
+            int weight = 1;
+            int colon = command.indexOf(':');
+            if(colon >= 0){
+                weight = Integer.parseInt(command.substring(colon + 1).trim());
+                command = command.substring(0, colon).trim();
+            }
+            if(!OFFLINE_COMMANDS.contains(command))
+                throw new IllegalArgumentException(command + " can not be answered offline, loadMix can use " + OFFLINE_COMMANDS);
+            for(int i = 0; i < weight; i++)
+                commands.add(command);
+        }
+        if(commands.isEmpty())
+            throw new IllegalArgumentException("loadMix has no commands");
+        return commands;
+    }
+
+    /**
+     * event - Creates a message event from a guild. Each guild is one author, so
+     * its commands share a rate limit queue the way a guilds do.
+     * @param content - the readable contents of the message
+     * @param channel - the channel replies are sent to
+     * @param guild - which guild the message is from
+     * @return MessageReceivedEvent - event over stub entities
+     */
+    private static MessageReceivedEvent event(String content, MessageChannel channel, int guild){
+        User author = stub(User.class, String.valueOf(1000 + guild));
+        Message message = (Message)Proxy.newProxyInstance(LoadTest.class.getClassLoader(), new Class<?>[]{Message.class},
+                (proxy, method, args) -> {
+                    switch(method.getName()){
+                        case "getContentDisplay":
+                        case "getContentRaw":
+                            return content;
+                        case "getAuthor":
+                            return author;
+                        case "getChannel":
+                            return channel;
+                        default:
+                            return zero(proxy, method.getName(), method.getReturnType(), args);
+                    }
+                });
+        return new MessageReceivedEvent(null, 0, message);
+    }
+
+    /**
+     * stub - Creates a stub of a JDA channel or user with the given id
+     * @param type - the interface to stub
+     * @param id - the id it answers with, users are named after it
+     * @return T - the stub
+     */
+    private static <T> T stub(Class<T> type, String id){
+        return type.cast(Proxy.newProxyInstance(LoadTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch(method.getName()){
+                        case "getId":
+                            return id;
+                        case "getIdLong":
+                            return Long.parseLong(id);
+                        case "getName":
+                            return "loadtest" + id;
+                        case "getDiscriminator":
+                            return "0001";
+                        default:
+                            return zero(proxy, method.getName(), method.getReturnType(), args);
+                    }
+                }));
+    }
+
+    /**
+     * zero - Answers the calls a stub does not care about
+     * @param proxy - the stub
+     * @param method - name of the method called
+     * @param type - return type of the method
+     * @param args - arguments of the call
+     * @return Object - identity for Object's methods, zero or false for primitives, null otherwise
+     */
+    private static Object zero(Object proxy, String method, Class<?> type, Object[] args){
+        switch(method){
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "Stub@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                break;
+        }
+        if(type == boolean.class)
+            return false;
+        if(type == long.class)
+            return 0L;
+        if(type == int.class)
+            return 0;
+        return null;
+    }
+
+    /**
+     * setDefault - Sets a config value unless it was given
+     * @param key - the config key
+     * @param value - the default value
+     */
+    private static void setDefault(String key, String value){
+        if(GameBot.config.getProperty(key) == null)
+            GameBot.config.setProperty(key, value);
+    }
+}
@@ -0,0 +1,166 @@
+package gamebot;
+
+import com.merakianalytics.datapipelines.PipelineContext;
+import com.merakianalytics.datapipelines.iterators.CloseableIterator;
+import com.merakianalytics.datapipelines.sources.DataSource;
+import com.merakianalytics.orianna.types.common.OriannaException;
+import com.merakianalytics.orianna.types.common.Platform;
+import com.merakianalytics.orianna.types.dto.DataObject;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMastery;
+import com.merakianalytics.orianna.types.dto.league.LeaguePosition;
+import com.merakianalytics.orianna.types.dto.league.SummonerPositions;
+import com.merakianalytics.orianna.types.dto.spectator.CurrentGameInfo;
+import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Purpose: Orianna data source that stands in for the Riot API during load
+ * tests. Orianna always sends Riot calls to the real regional hosts, so this
+ * source takes their place in the pipeline and makes the same calls against
+ * riotBaseUrl instead. Like Orianna a 404 gives back nothing and a 429 is
+ * retried after the Retry-After the server gives.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * PROVIDES             The Riot data types this source loads
+ * MAX_ATTEMPTS         Most times a throttled call is tried
+ *
+ * private final
+ *
+ * client               OkHttpClient the calls are made with
+ * baseUrl              Url the Riot API paths are added to
+ *
+ */
+public class LocalRiotAPI implements DataSource {
+    private static final Set<Class<?>> PROVIDES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Summoner.class, SummonerPositions.class, ChampionMasteries.class, CurrentGameInfo.class)));
+    private static final int MAX_ATTEMPTS = 3;
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+    private final String baseUrl = GameBot.config.getProperty("riotBaseUrl", "http://127.0.0.1:8089");
+
+    @Override
+    public Set<Class<?>> provides(){
+        return PROVIDES;
+    }
+
+    @Override
+    public <T> T get(Class<T> type, Map<String, Object> query, PipelineContext context){
+        Platform platform = (Platform)query.get("platform");
+        if(type == Summoner.class)
+            return type.cast(summoner(platform, query));
+        Number summonerId = (Number)query.get("summonerId");
+        if(platform == null || summonerId == null)
+            return null;
+        long id = summonerId.longValue();
+        if(type == SummonerPositions.class){
+            SummonerPositions positions = request(SummonerPositions.class, "lol/league/v3/positions/by-summoner/" + id);
+            if(positions != null){
+                positions.setPlatform(platform.getTag());
+                positions.setSummonerId(id);
+                for(LeaguePosition position : positions)
+                    position.setPlatform(platform.getTag());
+            }
+            return type.cast(positions);
+        }
+        if(type == ChampionMasteries.class){
+            ChampionMasteries masteries = request(ChampionMasteries.class, "lol/champion-mastery/v3/champion-masteries/by-summoner/" + id);
+            if(masteries != null){
+                masteries.setPlatform(platform.getTag());
+                masteries.setSummonerId(id);
+                for(ChampionMastery mastery : masteries)
+                    mastery.setPlatform(platform.getTag());
+            }
+            return type.cast(masteries);
+        }
+        if(type == CurrentGameInfo.class){
+            CurrentGameInfo game = request(CurrentGameInfo.class, "lol/spectator/v3/active-games/by-summoner/" + id);
+            if(game != null)
+                game.setSummonerId(id);
+            return type.cast(game);
+        }
+        return null;
+    }
+
+    @Override
+    public <T> CloseableIterator<T> getMany(Class<T> type, Map<String, Object> query, PipelineContext context){
+        //Only single lookups are made by the bot
+        return null;
+    }
+
+    /**
+     * summoner - Loads a summoner by id, account id or name, whichever the query has
+     * @param platform - the platform the summoner plays on
+     * @param query - the Orianna query
+     * @return Summoner - the summoner, null if they do not exist
+     */
+    private Summoner summoner(Platform platform, Map<String, Object> query){
+        if(platform == null)
+            return null;
+        String path;
+        if(query.get("id") != null)
+            path = "lol/summoner/v3/summoners/" + ((Number)query.get("id")).longValue();
+        else if(query.get("accountId") != null)
+            path = "lol/summoner/v3/summoners/by-account/" + ((Number)query.get("accountId")).longValue();
+        else if(query.get("name") != null)
+            path = "lol/summoner/v3/summoners/by-name/" + query.get("name");
+        else
+            return null;
+        Summoner summoner = request(Summoner.class, path);
+        if(summoner != null)
+            summoner.setPlatform(platform.getTag());
+        return summoner;
+    }
+
+    /**
+     * request - Makes a call and reads its response into the data type
+     * @param type - the data type of the response
+     * @param path - path of the call after the base url
+     * @return T - the response, null on a 404
+     */
+    private <T extends DataObject> T request(Class<T> type, String path){
+        HttpUrl url = HttpUrl.parse(baseUrl).newBuilder().addPathSegments(path).build();
+        Request request = new Request.Builder().url(url)
+                .header("X-Riot-Token", GameBot.config.getProperty("riotKey", ""))
+                .build();
+        for(int attempt = 1; ; attempt++){
+            try(Response response = client.newCall(request).execute()){
+                if(response.code() == 404)
+                    return null;
+                if(response.code() == 429 && attempt < MAX_ATTEMPTS){
+                    //Wait as long as the server asks before trying again
+                    String retryAfter = response.header("Retry-After");
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(retryAfter == null ? 1 : Long.parseLong(retryAfter.trim())));
+                    continue;
+                }
+                if(!response.isSuccessful())
+                    throw new OriannaException("Get request failed to " + url + " with code " + response.code());
+                return DataObject.fromJSON(type, response.body().string());
+            }
+            catch(IOException ex){
+                throw new OriannaException("Get request failed to " + url, ex);
+            }
+            catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new OriannaException("Get request to " + url + " was interrupted", ex);
+            }
+        }
+    }
+}
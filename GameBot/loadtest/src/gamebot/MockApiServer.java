@@ -0,0 +1,363 @@
+package gamebot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Purpose: Local stand in for the FortniteTracker, osu! and Riot APIs so the bot
+ * can be load tested without using real API keys. It answers the same paths
+ * the bot calls with recorded or made up responses, after an injected delay,
+ * and can turn a share of requests away with a 429 like a throttled API.
+ * Players whose names start with "missing" do not exist.
+ *
+ * Each upstream reads its settings from the config, a setting named for the
+ * upstream wins over the shared one, like mockLatencyMillis.riot over
+ * mockLatencyMillis.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * RIOT_NOT_FOUND       Body Riot sends with a 404
+ *
+ * private final
+ *
+ * server               HttpServer the APIs are served from
+ * pool                 ExecutorService requests are answered on, large enough that delays overlap
+ * upstreams            TreeMap of the settings and counts of each API
+ * fortniteProfile      Recorded FortniteTracker profile response
+ * osuUser              Recorded osu! get_user response
+ *
+ */
+final class MockApiServer {
+    private static final String RIOT_NOT_FOUND = "{\"status\":{\"message\":\"Data not found\",\"status_code\":404}}";
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private final Map<String, Upstream> upstreams = new TreeMap<>();
+    private final JSONObject fortniteProfile;
+    private final JSONObject osuUser;
+
+    /**
+     * Purpose: The injected behavior and counts of one API
+     *
+     * Variables            Description
+     *
+     * latencyMillis        Least time every response is delayed
+     * jitterMillis         Most extra random delay added to each response
+     * throttlePercent      Percent of requests answered with a 429
+     * retryAfterSeconds    Retry-After sent with each 429
+     * requests             Number of requests received
+     * throttled            Number of requests answered with a 429
+     */
+    static final class Upstream {
+        private final long latencyMillis;
+        private final long jitterMillis;
+        private final double throttlePercent;
+        private final long retryAfterSeconds;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+
+        private Upstream(Properties config, String name){
+            latencyMillis = Long.parseLong(setting(config, "mockLatencyMillis", name, "80"));
+            jitterMillis = Long.parseLong(setting(config, "mockJitterMillis", name, "40"));
+            throttlePercent = Double.parseDouble(setting(config, "mock429Percent", name, "0"));
+            retryAfterSeconds = Long.parseLong(setting(config, "mockRetryAfterSeconds", name, "1"));
+        }
+
+        long getRequests(){
+            return requests.sum();
+        }
+
+        long getThrottled(){
+            return throttled.sum();
+        }
+    }
+
+    /**
+     * @param config - Properties with the mock settings
+     * @param fortniteProfile - recorded FortniteTracker profile response
+     * @param osuUser - recorded osu! get_user response
+     */
+    MockApiServer(Properties config, byte[] fortniteProfile, byte[] osuUser) throws IOException{
+        this.fortniteProfile = new JSONObject(new String(fortniteProfile, StandardCharsets.UTF_8));
+        this.osuUser = new JSONArray(new String(osuUser, StandardCharsets.UTF_8)).getJSONObject(0);
+        for(String name : new String[]{"fortnite", "osu", "riot"})
+            upstreams.put(name, new Upstream(config, name));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", Integer.parseInt(config.getProperty("mockPort", "0"))), 0);
+        pool = Executors.newFixedThreadPool(Integer.parseInt(config.getProperty("mockThreads", "64")), CommandExecutor.namedThreads("mock-api"));
+        server.setExecutor(pool);
+        server.createContext("/v1/profile/", (exchange) -> serve(exchange, "fortnite", this::fortnite));
+        server.createContext("/api/get_user", (exchange) -> serve(exchange, "osu", this::osu));
+        server.createContext("/lol/", (exchange) -> serve(exchange, "riot", this::riot));
+    }
+
+    void start(){
+        server.start();
+    }
+
+    void stop(){
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    /**
+     * getBaseUrl - Gets the url the mock APIs are served from
+     * @return String - the url without a trailing slash
+     */
+    String getBaseUrl(){
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * getUpstreams - Gets the settings and counts of every API
+     * @return Map - upstream names to their Upstream
+     */
+    Map<String, Upstream> getUpstreams(){
+        return upstreams;
+    }
+
+    /**
+     * Purpose: Answers a request to one of the APIs
+     */
+    private interface Route {
+        Reply answer(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Purpose: A status code and body to answer with
+     */
+    private static final class Reply {
+        private final int code;
+        private final String body;
+
+        private Reply(int code, String body){
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    /**
+     * serve - Answers a request after the upstreams delay, or throttles it
+     * @param exchange - the request
+     * @param name - the upstream the request is for
+     * @param route - Route that makes the answer
+     */
+    private void serve(HttpExchange exchange, String name, Route route) throws IOException{
+        Upstream upstream = upstreams.get(name);
+        upstream.requests.increment();
+        try{
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = upstream.latencyMillis + (upstream.jitterMillis > 0 ? random.nextLong(upstream.jitterMillis + 1) : 0);
+            Thread.sleep(delay);
+            Reply reply;
+            if(random.nextDouble() * 100 < upstream.throttlePercent){
+                upstream.throttled.increment();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(upstream.retryAfterSeconds));
+                reply = new Reply(429, "{\"status\":{\"message\":\"Rate limit exceeded\",\"status_code\":429}}");
+            }
+            else
+                reply = route.answer(exchange);
+            byte[] body = reply.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+            exchange.sendResponseHeaders(reply.code, body.length);
+            try(OutputStream out = exchange.getResponseBody()){
+                out.write(body);
+            }
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        finally{
+            exchange.close();
+        }
+    }
+
+    /**
+     * fortnite - Answers /v1/profile/{platform}/{name} with the recorded profile
+     * renamed to the player asked for
+     * @param exchange - the request
+     * @return Reply - the profile, or FortniteTrackers error for a missing player
+     */
+    private Reply fortnite(HttpExchange exchange) throws UnsupportedEncodingException{
+        String[] path = exchange.getRequestURI().getRawPath().split("/");
+        if(path.length < 5)
+            return new Reply(404, "{\"error\":\"Not Found\"}");
+        String platform = path[3];
+        String name = URLDecoder.decode(path[4], "UTF-8");
+        //Xbox players are asked for as xbox/xbl(name)
+        if(name.startsWith("xbl(") && name.endsWith(")")){
+            platform = "xbl";
+            name = name.substring(4, name.length() - 1);
+        }
+        if(missing(name))
+            return new Reply(200, "{\"error\":\"Player Not Found\"}");
+        JSONObject profile = new JSONObject(fortniteProfile.toString());
+        profile.put("epicUserHandle", name);
+        profile.put("platformName", platform);
+        return new Reply(200, profile.toString());
+    }
+
+    /**
+     * osu - Answers /api/get_user?u={name} with the recorded user renamed to the player asked for
+     * @param exchange - the request
+     * @return Reply - an array with the user, empty for a missing player
+     */
+    private Reply osu(HttpExchange exchange) throws UnsupportedEncodingException{
+        String name = queryParameter(exchange.getRequestURI().getRawQuery(), "u");
+        if(name == null || missing(name))
+            return new Reply(200, "[]");
+        JSONObject user = new JSONObject(osuUser.toString());
+        user.put("username", name);
+        user.put("user_id", String.valueOf(summonerId(name)));
+        return new Reply(200, new JSONArray().put(user).toString());
+    }
+
+    /**
+     * riot - Answers the Riot API calls the bot makes. Every summoner is made up
+     * from their name, and nobody is ever in a game.
+     * @param exchange - the request
+     * @return Reply - the Riot response
+     */
+    private Reply riot(HttpExchange exchange) throws UnsupportedEncodingException{
+        String path = exchange.getRequestURI().getRawPath();
+        String last = URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), "UTF-8");
+        if(path.startsWith("/lol/summoner/v3/summoners/by-name/")){
+            if(missing(last))
+                return new Reply(404, RIOT_NOT_FOUND);
+            return new Reply(200, summoner(summonerId(last), last).toString());
+        }
+        long id;
+        try{
+            id = Long.parseLong(last);
+        }
+        catch(NumberFormatException ex){
+            return new Reply(404, RIOT_NOT_FOUND);
+        }
+        if(path.startsWith("/lol/summoner/v3/summoners/by-account/"))
+            return new Reply(200, summoner(id - 1000, "Summoner" + (id - 1000)).toString());
+        if(path.startsWith("/lol/summoner/v3/summoners/"))
+            return new Reply(200, summoner(id, "Summoner" + id).toString());
+        if(path.startsWith("/lol/league/v3/positions/by-summoner/")){
+            //One in four summoners is unranked
+            if(id % 4 == 0)
+                return new Reply(200, "[]");
+            JSONObject position = new JSONObject()
+                    .put("leagueId", "mock-league-" + (id % 50))
+                    .put("leagueName", "Mock's Legends")
+                    .put("queueType", "RANKED_SOLO_5x5")
+                    .put("position", "NONE")
+                    .put("tier", new String[]{"BRONZE", "SILVER", "GOLD", "PLATINUM", "DIAMOND"}[(int)(id % 5)])
+                    .put("rank", new String[]{"I", "II", "III", "IV", "V"}[(int)(id / 5 % 5)])
+                    .put("playerOrTeamId", String.valueOf(id))
+                    .put("playerOrTeamName", "Summoner" + id)
+                    .put("leaguePoints", id % 100)
+                    .put("wins", 40 + id % 60)
+                    .put("losses", 30 + id % 70)
+                    .put("veteran", false)
+                    .put("inactive", false)
+                    .put("freshBlood", false)
+                    .put("hotStreak", id % 3 == 0);
+            return new Reply(200, new JSONArray().put(position).toString());
+        }
+        if(path.startsWith("/lol/champion-mastery/v3/champion-masteries/by-summoner/")){
+            JSONArray masteries = new JSONArray();
+            int[] champions = {266, 103, 84, 12, 32, 34, 1, 22};
+            for(int i = 0; i < champions.length; i++){
+                masteries.put(new JSONObject()
+                        .put("playerId", id)
+                        .put("championId", champions[(int)((id + i) % champions.length)])
+                        .put("championLevel", Math.max(1, 7 - i))
+                        .put("championPoints", 250000 / (i + 1))
+                        .put("lastPlayTime", System.currentTimeMillis() - TimeUnit.DAYS.toMillis(i))
+                        .put("championPointsSinceLastLevel", 21600)
+                        .put("championPointsUntilNextLevel", 0)
+                        .put("chestGranted", i % 2 == 0)
+                        .put("tokensEarned", 0));
+            }
+            return new Reply(200, masteries.toString());
+        }
+        return new Reply(404, RIOT_NOT_FOUND);
+    }
+
+    /**
+     * summoner - Makes up a Riot summoner
+     * @param id - the summoner id
+     * @param name - the summoner name
+     * @return JSONObject - the summoner
+     */
+    private static JSONObject summoner(long id, String name){
+        return new JSONObject()
+                .put("id", id)
+                .put("accountId", id + 1000)
+                .put("name", name)
+                .put("profileIconId", 3379)
+                .put("summonerLevel", 30 + id % 200)
+                .put("revisionDate", System.currentTimeMillis());
+    }
+
+    /**
+     * summonerId - Gets the made up id of a player, the same every time for the same name
+     * @param name - the player name
+     * @return long - a positive id
+     */
+    private static long summonerId(String name){
+        return (name.replace(" ", "").toLowerCase(Locale.ROOT).hashCode() & 0x7fffffffL) + 1;
+    }
+
+    /**
+     * missing - Checks if a player should not exist
+     * @param name - the player name
+     * @return boolean - true if the name starts with missing
+     */
+    private static boolean missing(String name){
+        return name.toLowerCase(Locale.ROOT).startsWith("missing");
+    }
+
+    /**
+     * queryParameter - Reads one parameter of a query string
+     * @param query - the raw query string, may be null
+     * @param key - the parameter to read
+     * @return String - the decoded value, null if it is not there
+     */
+    private static String queryParameter(String query, String key) throws UnsupportedEncodingException{
+        if(query == null)
+            return null;
+        for(String pair : query.split("&")){
+            int equals = pair.indexOf('=');
+            if(equals > 0 && pair.substring(0, equals).equals(key))
+                return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+        }
+        return null;
+    }
+
+    /**
+     * setting - Reads a setting, preferring the one named for the upstream
+     * @param config - Properties with the mock settings
+     * @param key - the shared setting name
+     * @param upstream - the upstream name
+     * @param fallback - value if neither is set
+     * @return String - the setting
+     */
+    private static String setting(Properties config, String key, String upstream, String fallback){
+        return config.getProperty(key + "." + upstream, config.getProperty(key, fallback));
+    }
+}
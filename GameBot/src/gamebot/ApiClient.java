@@ -0,0 +1,244 @@
+package gamebot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Purpose: Shared HTTP client for the game API's. Connections are pooled and
+ * kept alive between requests so each request does not pay for a new TLS
+ * handshake. Response bodies are read into a reusable per thread buffer that
+ * is handed straight to the parser. The time and outcome of every request is
+ * recorded in Metrics under the upstream it was sent to.
+ *
+ * @author Colin Keys
+ *
+ * Variables                Description
+ *
+ * private static final
+ *
+ * CLIENT                   OkHttpClient with the shared connection pool
+ * GZIP                     Boolean - false if responses should not be gzipped
+ * BUFFER                   ThreadLocal byte array the response bodies are read into
+ *
+ */
+public class ApiClient {
+    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(Integer.parseInt(GameBot.config.getProperty("httpMaxIdleConnections", "10")),
+                    Long.parseLong(GameBot.config.getProperty("httpKeepAliveSeconds", "300")), TimeUnit.SECONDS))
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .build();
+    private static final boolean GZIP = Boolean.parseBoolean(GameBot.config.getProperty("httpGzip", "true"));
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[16 * 1024]);
+
+    /**
+     * Purpose: Turns a response body into the wanted object. The body array is
+     * reused after parse returns so it must not be kept.
+     */
+    public interface BodyParser<T> {
+        T parse(byte[] body, int length) throws IOException;
+    }
+
+    /**
+     * get - Sends a GET request and parses the response on this thread
+     * @param url - the url to request
+     * @param headers - Headers to send with the request
+     * @param parser - BodyParser that turns the response body into the result
+     * @return T - the parsed response body
+     */
+    public static <T> T get(String url, Headers headers, BodyParser<T> parser) throws IOException{
+        return get(url, headers, parser, null);
+    }
+    
+    /**
+     * get - Sends a GET request and parses the response on this thread, letting
+     * the bucket adjust its rate from the response
+     * @param url - the url to request
+     * @param headers - Headers to send with the request
+     * @param parser - BodyParser that turns the response body into the result
+     * @param bucket - RateLimitBucket of the API, null if there is none
+     * @return T - the parsed response body
+     */
+    public static <T> T get(String url, Headers headers, BodyParser<T> parser, RateLimitBucket bucket) throws IOException{
+        String upstream = upstream(url, bucket);
+        long start = System.nanoTime();
+        try(Response response = CLIENT.newCall(buildRequest(url, headers)).execute()){
+            if(bucket != null)
+                bucket.record(response.code(), response.headers());
+            T result = readResponse(response, parser);
+            recordRequest(upstream, start, true);
+            return result;
+        }
+        catch(IOException | RuntimeException ex){
+            recordRequest(upstream, start, false);
+            throw ex;
+        }
+    }
+
+    /**
+     * getAsync - Sends a GET request without blocking, the response is parsed
+     * on the clients own threads
+     * @param url - the url to request
+     * @param headers - Headers to send with the request
+     * @param parser - BodyParser that turns the response body into the result
+     * @return CompletableFuture - completes with the parsed response body
+     */
+    public static <T> CompletableFuture<T> getAsync(String url, Headers headers, BodyParser<T> parser){
+        return getAsync(url, headers, parser, null);
+    }
+    
+    /**
+     * getAsync - Sends a GET request without blocking, the response is parsed
+     * on the clients own threads and the bucket adjusts its rate from it
+     * @param url - the url to request
+     * @param headers - Headers to send with the request
+     * @param parser - BodyParser that turns the response body into the result
+     * @param bucket - RateLimitBucket of the API, null if there is none
+     * @return CompletableFuture - completes with the parsed response body
+     */
+    public static <T> CompletableFuture<T> getAsync(String url, Headers headers, BodyParser<T> parser, RateLimitBucket bucket){
+        CompletableFuture<T> result = new CompletableFuture<>();
+        String upstream = upstream(url, bucket);
+        long start = System.nanoTime();
+        CLIENT.newCall(buildRequest(url, headers)).enqueue(new Callback(){
+            @Override
+            public void onFailure(Call call, IOException ex){
+                recordRequest(upstream, start, false);
+                result.completeExceptionally(ex);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response){
+                try(Response r = response){
+                    if(bucket != null)
+                        bucket.record(r.code(), r.headers());
+                    T parsed = readResponse(r, parser);
+                    recordRequest(upstream, start, true);
+                    result.complete(parsed);
+                }
+                catch(IOException | RuntimeException ex){
+                    recordRequest(upstream, start, false);
+                    result.completeExceptionally(ex);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * recordRequest - Records the time and outcome of a request
+     * @param upstream - label of the API the request was sent to
+     * @param start - System.nanoTime the request was sent
+     * @param success - false if the request failed or could not be parsed
+     */
+    public static void recordRequest(String upstream, long start, boolean success){
+        Metrics.recordNanos(Metrics.name("upstream_seconds", "upstream", upstream), System.nanoTime() - start);
+        Metrics.increment(Metrics.name("upstream_requests_total", "upstream", upstream));
+        if(!success)
+            Metrics.increment(Metrics.name("upstream_errors_total", "upstream", upstream));
+    }
+
+    /**
+     * upstream - Gets the label a request is recorded under
+     * @param url - the url to request
+     * @param bucket - RateLimitBucket of the API, null if there is none
+     * @return String - the buckets label, or the host of the url if there is no bucket
+     */
+    private static String upstream(String url, RateLimitBucket bucket){
+        if(bucket != null)
+            return bucket.getLabel();
+        HttpUrl parsed = HttpUrl.parse(url);
+        return parsed == null ? "unknown" : parsed.host();
+    }
+
+    /**
+     * parseObject - BodyParser for a JSON object body
+     * @param body - the response body
+     * @param length - number of bytes in the body
+     * @return JSONObject - the parsed body
+     */
+    public static JSONObject parseObject(byte[] body, int length){
+        return new JSONObject(tokener(body, length));
+    }
+
+    /**
+     * parseArray - BodyParser for a JSON array body
+     * @param body - the response body
+     * @param length - number of bytes in the body
+     * @return JSONArray - the parsed body
+     */
+    public static JSONArray parseArray(byte[] body, int length){
+        return new JSONArray(tokener(body, length));
+    }
+
+    /**
+     * tokener - Creates a JSONTokener reading straight from the body bytes
+     * @param body - the response body
+     * @param length - number of bytes in the body
+     * @return JSONTokener - tokener over the body
+     */
+    private static JSONTokener tokener(byte[] body, int length){
+        return new JSONTokener(new InputStreamReader(new ByteArrayInputStream(body, 0, length), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * buildRequest - Creates the GET request for the given url
+     * @param url - the url to request
+     * @param headers - Headers to send with the request
+     * @return Request - the request to send
+     */
+    private static Request buildRequest(String url, Headers headers){
+        Request.Builder request = new Request.Builder().url(url).headers(headers);
+        //The client asks for gzip on its own unless told not to
+        if(!GZIP)
+            request.header("Accept-Encoding", "identity");
+        return request.build();
+    }
+
+    /**
+     * readResponse - Reads the response body into this threads buffer and parses it
+     * @param response - the response to read
+     * @param parser - BodyParser that turns the response body into the result
+     * @return T - the parsed response body
+     */
+    private static <T> T readResponse(Response response, BodyParser<T> parser) throws IOException{
+        if(!response.isSuccessful())
+            //Only the path is logged, the query can hold an API key
+            throw new IOException("Server returned HTTP response code: " + response.code() + " for URL: "
+                    + response.request().url().host() + response.request().url().encodedPath());
+        byte[] buffer = BUFFER.get();
+        int length = 0;
+        ResponseBody body = response.body();
+        try(InputStream in = body.byteStream()){
+            int read;
+            while((read = in.read(buffer, length, buffer.length - length)) != -1){
+                length += read;
+                //Grow the buffer when it fills and keep it for this thread
+                if(length == buffer.length){
+                    byte[] bigger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, bigger, 0, length);
+                    buffer = bigger;
+                    BUFFER.set(buffer);
+                }
+            }
+        }
+        return parser.parse(buffer, length);
+    }
+}
@@ -0,0 +1,38 @@
+package gamebot;
+
+import java.io.IOException;
+
+/**
+ * Purpose: Thrown when an API is too busy to take another request in time.
+ * The message is the reply to give the user.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * serialVersionUID     Version of the serialized form
+ *
+ * private final
+ *
+ * retrySeconds         Seconds until the request would likely be accepted
+ *
+ */
+public class BusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final long retrySeconds;
+
+    /**
+     * @param api - readable name of the busy API
+     * @param retrySeconds - seconds until the request would likely be accepted
+     */
+    public BusyException(String api, long retrySeconds){
+        super("**Busy!** Too many " + api + " requests right now, try again in " + retrySeconds + "s");
+        this.retrySeconds = retrySeconds;
+    }
+
+    public long getRetrySeconds(){
+        return retrySeconds;
+    }
+}
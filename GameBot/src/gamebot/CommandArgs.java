@@ -0,0 +1,202 @@
+package gamebot;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Purpose: The arguments given after a command, found in one pass over the
+ * message. Only the start and end of each argument are kept, and arguments are
+ * handed out as views over the message instead of copies. Arguments are split
+ * on whitespace, and anything in double quotes is one argument. Only joining
+ * several arguments with rest makes a copy.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * START, END           Offsets in a span of where the argument starts and ends, without quotes
+ * SPAN                 Number of ints kept for each argument
+ *
+ * private final
+ *
+ * message              The whole message the arguments are in
+ *
+ * private
+ *
+ * spans                int array of the spans of every argument, SPAN ints each
+ * size                 Number of arguments
+ *
+ */
+public final class CommandArgs {
+    private static final int START = 0;
+    private static final int END = 1;
+    private static final int SPAN = 2;
+    private final String message;
+    private int[] spans = new int[SPAN * 4];
+    private int size;
+
+    private CommandArgs(String message){
+        this.message = message;
+    }
+
+    /**
+     * parse - Finds the arguments in the message
+     * @param message - the whole message
+     * @param from - where the arguments start, just after the command
+     * @return CommandArgs - the arguments of the message
+     */
+    public static CommandArgs parse(String message, int from){
+        CommandArgs args = new CommandArgs(message);
+        int length = message.length();
+        int i = from;
+        while(i < length){
+            //Skip the spaces between arguments
+            if(Character.isWhitespace(message.charAt(i))){
+                i++;
+                continue;
+            }
+            int start = i;
+            if(message.charAt(i) == '"'){
+                //A quoted argument runs to the closing quote, or the end of the message if there is none
+                int close = message.indexOf('"', i + 1);
+                int end = close < 0 ? length : close;
+                i = close < 0 ? length : close + 1;
+                args.add(start + 1, end);
+            }
+            else{
+                while(i < length && !Character.isWhitespace(message.charAt(i)))
+                    i++;
+                args.add(start, i);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * add - Keeps the span of an argument
+     * @param start - start of the argument without quotes
+     * @param end - end of the argument without quotes
+     */
+    private void add(int start, int end){
+        if((size + 1) * SPAN > spans.length){
+            int[] bigger = new int[spans.length * 2];
+            System.arraycopy(spans, 0, bigger, 0, spans.length);
+            spans = bigger;
+        }
+        int at = size * SPAN;
+        spans[at + START] = start;
+        spans[at + END] = end;
+        size++;
+    }
+
+    /**
+     * size - Gets the number of arguments
+     * @return int - the number of arguments
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * get - Gets an argument without its quotes
+     * @param index - which argument to get
+     * @return CharSequence - view of the argument in the message
+     */
+    public CharSequence get(int index){
+        checkIndex(index);
+        return CharBuffer.wrap(message, spans[index * SPAN + START], spans[index * SPAN + END]);
+    }
+
+    /**
+     * getString - Gets an argument as a String, for when it is used as a key
+     * @param index - which argument to get
+     * @return String - the argument
+     */
+    public String getString(int index){
+        checkIndex(index);
+        return message.substring(spans[index * SPAN + START], spans[index * SPAN + END]);
+    }
+
+    /**
+     * rest - Gets the arguments from one to the last, the way names with spaces
+     * are given. Arguments are joined with single spaces and always lose their
+     * quotes, so "Stank Bank" and Stank   Bank both give Stank Bank.
+     * @param from - the first argument to include
+     * @return CharSequence - the rest of the arguments, empty if there are none left
+     */
+    public CharSequence rest(int from){
+        if(from >= size)
+            return CharBuffer.wrap(message, message.length(), message.length());
+        //One argument needs no joining so it stays a view
+        if(from == size - 1)
+            return get(from);
+        StringBuilder joined = new StringBuilder();
+        for(int i = from; i < size; i++){
+            if(i > from)
+                joined.append(' ');
+            joined.append(message, spans[i * SPAN + START], spans[i * SPAN + END]);
+        }
+        return joined;
+    }
+
+    /**
+     * split - Splits text on a separator, like the names in a;b
+     * @param text - the text to split
+     * @param separator - the character between the parts
+     * @return List - views of the trimmed parts, empty parts are left out
+     */
+    public static List<CharSequence> split(CharSequence text, char separator){
+        List<CharSequence> parts = new ArrayList<>();
+        int start = 0;
+        for(int i = 0; i <= text.length(); i++){
+            if(i == text.length() || text.charAt(i) == separator){
+                CharSequence part = trim(text.subSequence(start, i));
+                if(part.length() > 0)
+                    parts.add(part);
+                start = i + 1;
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * indexOf - Finds the first of a character in text
+     * @param text - the text to search
+     * @param c - the character to find
+     * @return int - index of the character, -1 if it is not there
+     */
+    public static int indexOf(CharSequence text, char c){
+        for(int i = 0; i < text.length(); i++){
+            if(text.charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * trim - Takes the whitespace off both ends of text
+     * @param text - the text to trim
+     * @return CharSequence - view of the trimmed text
+     */
+    public static CharSequence trim(CharSequence text){
+        int start = 0;
+        int end = text.length();
+        while(start < end && Character.isWhitespace(text.charAt(start)))
+            start++;
+        while(end > start && Character.isWhitespace(text.charAt(end - 1)))
+            end--;
+        return text.subSequence(start, end);
+    }
+
+    /**
+     * checkIndex - Makes sure an argument exists
+     * @param index - which argument
+     */
+    private void checkIndex(int index){
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Argument " + index + " of " + size);
+    }
+}
@@ -0,0 +1,168 @@
+package gamebot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+
+/**
+ * Purpose: This class implements the single ListenerAdapter for the discord bot.
+ * Every message is checked against the prefix once, the command is looked up
+ * in a hash of registered commands and the parsed arguments are routed to the
+ * CommandHandler that registered it on the CommandExecutor's pool.
+ *
+ * @author Colin Keys
+ *
+ * Variables                Description
+ *
+ * public static final
+ *
+ * DEFAULT_TIMEOUT          Seconds a command has to finish unless it registers its own timeout
+ * DEFAULT_MAX_QUEUED       Number of one command that can be waiting or running unless it registers its own limit
+ *
+ * private final
+ *
+ * prefix                   String the commands must start with
+ * executor                 CommandExecutor the handlers are ran on
+ * commands                 HashMap - keys are command names without the prefix, values are their registrations
+ *
+ */
+public class CommandDispatcher extends ListenerAdapter {
+    public static final int DEFAULT_TIMEOUT = 15;
+    public static final int DEFAULT_MAX_QUEUED = 25;
+    private final String prefix;
+    private final CommandExecutor executor;
+    private final Map<String, RegisteredCommand> commands = new HashMap<>();
+
+    public CommandDispatcher(String prefix, CommandExecutor executor){
+        this.prefix = prefix;
+        this.executor = executor;
+        Metrics.gauge("command_queue_depth", executor::getQueueDepth);
+    }
+
+    /**
+     * register - Routes the given command names to the given handler with the
+     * default timeout and queue limit
+     * @param handler - CommandHandler that processes the commands
+     * @param names - command names without the prefix
+     */
+    public void register(CommandHandler handler, String... names){
+        register(handler, DEFAULT_TIMEOUT, DEFAULT_MAX_QUEUED, names);
+    }
+
+    /**
+     * register - Routes the given command names to the given handler
+     * @param handler - CommandHandler that processes the commands
+     * @param timeoutSeconds - seconds each command has to finish before it is cancelled
+     * @param maxQueued - number of each command that can be waiting or running at once
+     * @param names - command names without the prefix
+     */
+    public void register(CommandHandler handler, int timeoutSeconds, int maxQueued, String... names){
+        for(String name : names)
+            commands.put(name, new RegisteredCommand(handler, timeoutSeconds, maxQueued));
+    }
+
+    /**
+     * onMessageReceived - Parses the message once and hands it to the handler
+     * registered for its command. How long each command waits and runs is
+     * recorded in Metrics.
+     * @param event - MessageReceivedEvent instance generated when the bot
+     * a message the bot can read it received.
+     */
+    @Override
+    public void onMessageReceived(MessageReceivedEvent event){
+        //Get the readable contents of the message
+        String message = event.getMessage().getContentDisplay();
+        //Non-command traffic leaves after the prefix check, dont respond to other bots or this bot
+        if(!message.startsWith(prefix) || event.getAuthor().isBot()) return;
+        //Command name runs from the prefix up to the first whitespace, the same as the arguments are split on
+        int commandEnd = prefix.length();
+        while(commandEnd < message.length() && !Character.isWhitespace(message.charAt(commandEnd)))
+            commandEnd++;
+        String command = message.substring(prefix.length(), commandEnd);
+        RegisteredCommand registered = commands.get(command);
+        if(registered == null) return;
+        //Find the args after the command without copying them
+        CommandArgs args = CommandArgs.parse(message, commandEnd);
+        Metrics.increment(Metrics.name("commands_total", "command", command));
+        //Back off if too many of this command are already waiting
+        if(registered.pending.incrementAndGet() > registered.maxQueued){
+            registered.pending.decrementAndGet();
+            busy(event, command);
+            return;
+        }
+        long queuedAt = System.nanoTime();
+        boolean accepted = executor.execute(() -> run(registered, event, command, args, queuedAt),
+                registered.timeoutSeconds,
+                () -> {
+                    Metrics.increment(Metrics.name("command_timeouts_total", "command", command));
+                    Replies.send(event.getChannel(), "**" + prefix + command + "** took too long to respond, try again later");
+                },
+                () -> registered.pending.decrementAndGet());
+        if(!accepted){
+            registered.pending.decrementAndGet();
+            busy(event, command);
+        }
+    }
+
+    /**
+     * run - Runs a command on the executor's thread, recording how long it waited
+     * for a thread and how long it ran
+     * @param registered - the registration of the command
+     * @param event - MessageReceivedEvent instance generated when the bot
+     * @param command - the command name without the prefix
+     * @param args - the parsed arguments
+     * @param queuedAt - System.nanoTime the command was queued
+     */
+    private void run(RegisteredCommand registered, MessageReceivedEvent event, String command, CommandArgs args, long queuedAt){
+        long start = System.nanoTime();
+        Metrics.recordNanos(Metrics.name("command_queue_seconds", "command", command), start - queuedAt);
+        try{
+            registered.handler.onCommand(event, command, args);
+        }
+        catch(RuntimeException ex){
+            Metrics.increment(Metrics.name("command_errors_total", "command", command));
+            throw ex;
+        }
+        finally{
+            Metrics.recordNanos(Metrics.name("command_seconds", "command", command), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * busy - Sends a message for when a command can not be queued
+     * @param event - MessageReceivedEvent instance generated when the bot
+     * @param command - the command name without the prefix
+     */
+    private void busy(MessageReceivedEvent event, String command){
+        Metrics.increment(Metrics.name("command_rejected_total", "command", command));
+        StringBuilder busyString = new StringBuilder();
+        busyString.append("**Busy!** Too many commands are waiting, **").append(prefix).append(command)
+                .append("** was not ran. Try again in a few seconds");
+        Replies.send(event.getChannel(), busyString.toString());
+    }
+
+    /**
+     * Purpose: Holds a registered handler and the limits for one command
+     *
+     * Variables            Description
+     *
+     * handler              CommandHandler that processes the command
+     * timeoutSeconds       Seconds the command has to finish
+     * maxQueued            Number of the command that can be waiting or running at once
+     * pending              Number of the command currently waiting or running
+     */
+    private static class RegisteredCommand {
+        private final CommandHandler handler;
+        private final int timeoutSeconds;
+        private final int maxQueued;
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private RegisteredCommand(CommandHandler handler, int timeoutSeconds, int maxQueued){
+            this.handler = handler;
+            this.timeoutSeconds = timeoutSeconds;
+            this.maxQueued = maxQueued;
+        }
+    }
+}
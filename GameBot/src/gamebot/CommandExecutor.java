@@ -0,0 +1,133 @@
+package gamebot;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Purpose: Runs command handlers off of the JDA event thread on a bounded pool
+ * so one slow API lookup does not stall every other command. Each task gets a
+ * timeout after which it is cancelled.
+ * 
+ * @author Colin Keys
+ * 
+ * Variables                Description
+ * 
+ * private final
+ * 
+ * pool                     ThreadPoolExecutor with a bounded queue that runs the commands
+ * timer                    ScheduledThreadPoolExecutor that cancels commands that run too long
+ * 
+ */
+public class CommandExecutor {
+    private final ThreadPoolExecutor pool;
+    private final ScheduledThreadPoolExecutor timer;
+    
+    /**
+     * @param threads - number of commands that can run at once
+     * @param queueSize - number of commands that can wait for a thread before being rejected
+     */
+    public CommandExecutor(int threads, int queueSize){
+        pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), namedThreads("command"));
+        pool.allowCoreThreadTimeOut(true);
+        timer = new ScheduledThreadPoolExecutor(1, namedThreads("command-timeout"));
+        timer.setRemoveOnCancelPolicy(true);
+    }
+    
+    /**
+     * execute - Queues the command on the pool and cancels it if it has not 
+     * finished before the timeout.
+     * @param command - the command to run
+     * @param timeoutSeconds - seconds the command has to finish
+     * @param onTimeout - ran if the command was cancelled for taking too long
+     * @param onDone - ran once the command's thread is done with it, or once it
+     * is cancelled if it never started
+     * @return Boolean - false if the queue is full and the command was not accepted
+     */
+    public boolean execute(Runnable command, long timeoutSeconds, Runnable onTimeout, Runnable onDone){
+        final ScheduledFuture<?>[] timeout = new ScheduledFuture<?>[1];
+        //Whichever of the worker or the cancel claims the command first runs onDone
+        final AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            if(!claimed.compareAndSet(false, true))
+                return;
+            try{
+                command.run();
+            }
+            catch(RuntimeException ex){
+                Logger.getLogger(CommandExecutor.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            finally{
+                //A cancelled command can keep running if it ignores the interrupt, so it still counts until here
+                onDone.run();
+            }
+        }, null){
+            @Override
+            protected void done(){
+                //Stop the timeout once it is no longer needed
+                synchronized(timeout){
+                    if(timeout[0] != null)
+                        timeout[0].cancel(false);
+                }
+                //Cancelled before a thread picked it up
+                if(claimed.compareAndSet(false, true))
+                    onDone.run();
+            }
+        };
+        try{
+            pool.execute(task);
+        }
+        catch(RejectedExecutionException ex){
+            return false;
+        }
+        synchronized(timeout){
+            if(!task.isDone()){
+                timeout[0] = timer.schedule(() -> {
+                    if(task.cancel(true))
+                        onTimeout.run();
+                }, timeoutSeconds, TimeUnit.SECONDS);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * getQueueDepth - Gets the number of commands waiting for a thread
+     * @return int - commands waiting in the queue
+     */
+    public int getQueueDepth(){
+        return pool.getQueue().size();
+    }
+    
+    /**
+     * shutdown - Stops accepting commands and lets the running ones finish
+     */
+    public void shutdown(){
+        pool.shutdown();
+        timer.shutdown();
+    }
+    
+    /**
+     * namedThreads - Creates a ThreadFactory of daemon threads with the given name
+     * @param name - prefix for the thread names
+     * @return ThreadFactory - factory for the named threads
+     */
+    static ThreadFactory namedThreads(String name){
+        final AtomicInteger count = new AtomicInteger();
+        return (Runnable r) -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
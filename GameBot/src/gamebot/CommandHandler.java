@@ -0,0 +1,23 @@
+package gamebot;
+
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * Purpose: Implemented by any class that processes bot commands. Handlers register
+ * the command names they respond to with the CommandDispatcher, which calls
+ * onCommand once the message has been parsed.
+ * 
+ * @author Colin Keys
+ * 
+ */
+public interface CommandHandler {
+    
+    /**
+     * onCommand - Handles a single command that was registered by this handler
+     * @param event - MessageReceivedEvent instance generated when the bot
+     * a message the bot can read it received.
+     * @param command - the command name without the prefix
+     * @param args - CommandArgs of the arguments given after the command
+     */
+    void onCommand(MessageReceivedEvent event, String command, CommandArgs args);
+}
@@ -5,86 +5,499 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
 /**
  * Purpose: Implements methods to connect to a local database and update/insert
- * specific data.
- * 
+ * specific data. Command uses are kept one row per user and command in
+ * APP.COMMAND_USAGE, with command names looked up in a dictionary loaded at
+ * startup. Connections are kept in a bounded pool that validates them
+ * before reuse and closes ones that sit idle too long. The database can be
+ * reached through a Derby network server or ran embedded in the bot. The
+ * network server needs derbyclient.jar on the classpath and dbMode=embedded
+ * needs derby.jar.
+ *
  * @author Colin Keys
- * 
+ *
  * Variables            Description
+ *
+ * private static final
+ *
+ * EMBEDDED             Boolean - true if Derby is ran in process instead of through the network server
+ * DB_NAME              Name of the database
+ * TRACKED_COMMANDS     Commands added to the dictionary on startup, also the old per command columns of APP.USERS
+ * USAGE_MERGE          Sql that adds uses to a users command count, the same for every command
+ * COMMAND_IDS          ConcurrentHashMap - keys are command names, values are their ids in APP.COMMANDS
+ * POOL_SIZE            Most connections that can be open at once
+ * IDLE_TIMEOUT         Nanoseconds a connection can sit unused before it is closed
+ * VALIDATE_AFTER       Nanoseconds a connection can sit unused before it is validated on borrow
+ * PERMITS              Semaphore limiting the connections in use to the pool size
+ * IDLE                 LinkedBlockingDeque of open connections not in use, most recently used first
+ * EVICTOR              ScheduledExecutorService that closes idle connections
  * 
+ * private final
+ * 
+ * userIds              ConcurrentHashMap - keys are users known to be in the database as name#discriminator, values are their ids
+ *
  */
 public class DatabaseOps {
-    
+    private static final boolean EMBEDDED = "embedded".equalsIgnoreCase(GameBot.config.getProperty("dbMode", "network"));
+    private static final String DB_NAME = GameBot.config.getProperty("dbName", "GameBotStats");
+    private static final String[] TRACKED_COMMANDS = {"help", "ping", "buddy", "roll", "gimme", "reverse",
+        "lolHelp", "lol", "lolRegion", "lolRanks", "lolRanksRegion", "lolLive", "lolLiveRegion",
+        "fnHelp", "fnLifetime", "fnCurrent", "fnCompare", "stats"};
+    private static final String USAGE_MERGE = "merge into APP.COMMAND_USAGE cu using SYSIBM.SYSDUMMY1 "
+            + "on cu.user_id = ? and cu.command_id = ? when matched then update set uses = cu.uses + ? "
+            + "when not matched then insert (user_id, command_id, uses) values (?, ?, ?)";
+    private static final ConcurrentHashMap<String, Integer> COMMAND_IDS = new ConcurrentHashMap<>();
+    private static final int POOL_SIZE = Integer.parseInt(GameBot.config.getProperty("dbPoolSize", "4"));
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(Long.parseLong(GameBot.config.getProperty("dbIdleTimeoutSeconds", "300")));
+    private static final long VALIDATE_AFTER = TimeUnit.SECONDS.toNanos(30);
+    private static final Semaphore PERMITS = new Semaphore(POOL_SIZE, true);
+    private static final LinkedBlockingDeque<PooledConnection> IDLE = new LinkedBlockingDeque<>();
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(CommandExecutor.namedThreads("db-evictor"));
+    private final ConcurrentHashMap<String, Integer> userIds = new ConcurrentHashMap<>();
+
+    static{
+        EVICTOR.scheduleWithFixedDelay(DatabaseOps::evictIdle, 60, 60, TimeUnit.SECONDS);
+    }
+
     /**
-     * getConnection - Opens a connection to a local database
-     * @return Connection - A connection to the database 
+     * getConnection - Opens a connection to a local database, creating it first
+     * when ran embedded
+     * @return Connection - A connection to the database
      */
     public static Connection getConnection() throws SQLException, ClassNotFoundException, InstantiationException, IllegalAccessException{
-        Class.forName("org.apache.derby.jdbc.ClientDriver").newInstance();
-        String dbUrl = "jdbc:derby://localhost:1527/GameBotStats";
+        String dbUrl;
+        if(EMBEDDED){
+            Class.forName("org.apache.derby.jdbc.EmbeddedDriver").newInstance();
+            dbUrl = "jdbc:derby:" + DB_NAME + ";create=true";
+        }
+        else{
+            Class.forName("org.apache.derby.jdbc.ClientDriver").newInstance();
+            dbUrl = "jdbc:derby://localhost:1527/" + DB_NAME;
+        }
         return DriverManager.getConnection(dbUrl, GameBot.config.getProperty("serverUser"), GameBot.config.getProperty("serverPass"));
     }
-    
+
     /**
-     * dbUpdate - Updates the database by incrementing a users command call count, 
-     * while also adding a new entry if necessary
-     * @param event - MessageReceivedEvent instance generated when the bot
-     * a message the bot can read it received.
-     * @param command - command called by the user
+     * borrow - Takes a connection from the pool, opening a new one if none are idle
+     * @return PooledConnection - A connection that must be given back with release or discard
      */
-    public void dbUpdate(MessageReceivedEvent event, String command) throws SQLException, IllegalAccessException{
-        try {
-            Connection conn = DatabaseOps.getConnection();
-            PreparedStatement prepstate;
-            //If user isnt in the database add them
-            if(!checkExists(event, conn)){
-                //Get number of entrys so new entry can have proper id
-                prepstate = conn.prepareStatement("select count(*) from APP.USERS");
-                ResultSet rs = prepstate.executeQuery();
-                int count = 0;
-                while(rs.next()){
-                    count = rs.getInt(1);
-                }
-                //Add new entry and start the command they used at 1
-                prepstate = conn.prepareStatement("insert into APP.USERS (user_id, discordName, discrim, " + command + ") values (?, ?, ?, ?)");
-                prepstate.setInt(1, count+1);
-                prepstate.setString(2, event.getAuthor().getName());
-                prepstate.setString(3, event.getAuthor().getDiscriminator());
-                prepstate.setInt(4, 1);
-                prepstate.executeUpdate();
-                
+    static PooledConnection borrow() throws SQLException{
+        try{
+            if(!PERMITS.tryAcquire(5, TimeUnit.SECONDS))
+                throw new SQLException("Timed out waiting for a database connection");
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection", ex);
+        }
+        try{
+            PooledConnection conn;
+            //Reuse the most recently used connection, checking it first if it sat a while
+            while((conn = IDLE.pollFirst()) != null){
+                if(conn.idleNanos() < VALIDATE_AFTER || conn.isValid(2))
+                    return conn;
+                conn.close();
             }
-            else{
-                //Update the used command by one
-                String strang = "update APP.USERS set " + command + " = " + command + " + 1 where discordName = ? and discrim = ?";
-                prepstate = conn.prepareStatement(strang);
-                prepstate.setString(1, event.getAuthor().getName());
-                prepstate.setString(2, event.getAuthor().getDiscriminator());
-                prepstate.executeUpdate();
+            return new PooledConnection(getConnection());
+        }
+        catch(SQLException | ClassNotFoundException | InstantiationException | IllegalAccessException | RuntimeException ex){
+            PERMITS.release();
+            if(ex instanceof SQLException)
+                throw (SQLException)ex;
+            throw new SQLException("Could not open a database connection", ex);
+        }
+    }
+
+    /**
+     * release - Gives a working connection back to the pool
+     * @param conn - the connection to give back
+     */
+    static void release(PooledConnection conn){
+        conn.touch();
+        IDLE.offerFirst(conn);
+        PERMITS.release();
+    }
+
+    /**
+     * discard - Closes a connection that failed instead of giving it back to the pool
+     * @param conn - the connection to close
+     */
+    static void discard(PooledConnection conn){
+        conn.close();
+        PERMITS.release();
+    }
+
+    /**
+     * evictIdle - Closes connections that have not been used within the idle timeout
+     */
+    private static void evictIdle(){
+        //Oldest connections are at the end of the deque
+        Iterator<PooledConnection> idle = IDLE.descendingIterator();
+        while(idle.hasNext()){
+            PooledConnection conn = idle.next();
+            if(conn.idleNanos() > IDLE_TIMEOUT && IDLE.remove(conn))
+                conn.close();
+        }
+    }
+
+    /**
+     * initSchema - Creates the tables, their indexes and the user id sequence if they
+     * do not exist yet, then loads the command dictionary. Counts kept in the old per
+     * command columns of APP.USERS are copied over when APP.COMMAND_USAGE is first made.
+     */
+    public static void initSchema() throws SQLException{
+        PooledConnection conn = borrow();
+        Connection connection = conn.getConnection();
+        boolean succeeded = false;
+        try{
+            connection.setAutoCommit(false);
+            boolean migrate;
+            try(Statement statement = connection.createStatement()){
+                createIfMissing(statement, "create table APP.USERS (user_id integer not null primary key, "
+                        + "discordName varchar(32) not null, discrim varchar(4) not null)");
+                //Every user lookup filters on the name and discriminator
+                createIfMissing(statement, "create index APP.USERS_NAME_DISCRIM on APP.USERS (discordName, discrim)");
+                createIfMissing(statement, "create table APP.COMMANDS (command_id integer not null generated always as identity "
+                        + "primary key, name varchar(32) not null unique)");
+                migrate = createIfMissing(statement, "create table APP.COMMAND_USAGE (user_id integer not null, "
+                        + "command_id integer not null, uses bigint not null default 0, primary key (user_id, command_id))");
+                //Totals per command are grouped straight off of this index
+                createIfMissing(statement, "create index APP.COMMAND_USAGE_COMMAND on APP.COMMAND_USAGE (command_id, uses)");
+            }
+            createSequence(conn);
+            for(String command : TRACKED_COMMANDS)
+                addCommand(conn, command);
+            COMMAND_IDS.putAll(loadCommands(conn));
+            if(migrate)
+                migrateUsage(conn);
+            connection.commit();
+            succeeded = true;
+        }
+        finally{
+            finish(conn, succeeded);
+        }
+    }
+
+    /**
+     * createSequence - Creates the user id sequence if it does not exist yet, starting
+     * after the highest id already in APP.USERS
+     * @param conn - connection to the database
+     */
+    private static void createSequence(PooledConnection conn) throws SQLException{
+        PreparedStatement prepstate = conn.prepare("select 1 from SYS.SYSSEQUENCES s join SYS.SYSSCHEMAS sc "
+                + "on s.SCHEMAID = sc.SCHEMAID where sc.SCHEMANAME = 'APP' and s.SEQUENCENAME = 'USER_ID_SEQ'");
+        try(ResultSet rs = prepstate.executeQuery()){
+            if(rs.next()) return;
+        }
+        int maxId = 0;
+        prepstate = conn.prepare("select max(user_id) from APP.USERS");
+        try(ResultSet rs = prepstate.executeQuery()){
+            if(rs.next())
+                maxId = rs.getInt(1);
+        }
+        try(Statement statement = conn.getConnection().createStatement()){
+            statement.executeUpdate("create sequence APP.USER_ID_SEQ as integer start with " + (maxId + 1));
+        }
+    }
+
+    /**
+     * migrateUsage - Copies the counts from the old per command columns of APP.USERS
+     * into APP.COMMAND_USAGE. The old columns are left in place.
+     * @param conn - connection to the database
+     */
+    private static void migrateUsage(PooledConnection conn) throws SQLException{
+        Connection connection = conn.getConnection();
+        //Find which of the old columns this table has
+        List<String> columns = new ArrayList<>();
+        try(ResultSet rs = connection.getMetaData().getColumns(null, "APP", "USERS", null)){
+            while(rs.next())
+                columns.add(rs.getString("COLUMN_NAME"));
+        }
+        try(Statement statement = connection.createStatement()){
+            for(String command : TRACKED_COMMANDS){
+                String column = command.toUpperCase(Locale.ROOT);
+                if(!columns.contains(column)) continue;
+                statement.executeUpdate("insert into APP.COMMAND_USAGE (user_id, command_id, uses) select user_id, "
+                        + COMMAND_IDS.get(command) + ", sum(" + column + ") from APP.USERS where " + column + " > 0 group by user_id");
             }
+        }
+    }
+
+    /**
+     * addCommand - Adds the command to the dictionary if it is not there yet
+     * @param conn - connection to the database
+     * @param command - name of the command
+     */
+    private static void addCommand(PooledConnection conn, String command) throws SQLException{
+        PreparedStatement prepstate = conn.prepare("merge into APP.COMMANDS c using SYSIBM.SYSDUMMY1 on c.name = ? "
+                + "when not matched then insert (name) values (?)");
+        prepstate.setString(1, command);
+        prepstate.setString(2, command);
+        prepstate.executeUpdate();
+    }
+
+    /**
+     * loadCommands - Reads the command dictionary
+     * @param conn - connection to the database
+     * @return Map - keys are command names, values are their ids
+     */
+    private static Map<String, Integer> loadCommands(PooledConnection conn) throws SQLException{
+        Map<String, Integer> commands = new HashMap<>();
+        PreparedStatement prepstate = conn.prepare("select name, command_id from APP.COMMANDS");
+        try(ResultSet rs = prepstate.executeQuery()){
+            while(rs.next())
+                commands.put(rs.getString(1), rs.getInt(2));
+        }
+        return commands;
+    }
+
+    /**
+     * createIfMissing - Runs the given create statement, ignoring the error Derby
+     * gives when the table or index is already there
+     * @param statement - Statement to run the sql with
+     * @param sql - the create sql
+     * @return Boolean - true if the table or index was created
+     */
+    private static boolean createIfMissing(Statement statement, String sql) throws SQLException{
+        try{
+            statement.executeUpdate(sql);
+            return true;
+        }
+        catch(SQLException ex){
+            //X0Y32 - object already exists
+            if(!"X0Y32".equals(ex.getSQLState()))
+                throw ex;
+            return false;
+        }
+    }
+
+    /**
+     * shutdown - Closes the pooled connections and, when ran embedded, shuts
+     * Derby down so the database is closed cleanly
+     */
+    public static void shutdown(){
+        EVICTOR.shutdown();
+        PooledConnection conn;
+        while((conn = IDLE.pollFirst()) != null)
             conn.close();
-        } catch (ClassNotFoundException | InstantiationException ex) {
-            Logger.getLogger(MyListener.class.getName()).log(Level.SEVERE, null, ex);
+        if(!EMBEDDED) return;
+        try{
+            DriverManager.getConnection("jdbc:derby:;shutdown=true");
+        }
+        catch(SQLException ex){
+            //XJ015 - Derby always reports a successful shutdown as an error
+            if(!"XJ015".equals(ex.getSQLState()))
+                Logger.getLogger(DatabaseOps.class.getName()).log(Level.WARNING, null, ex);
         }
     }
     
     /**
-     * dbUpdate - Checks to see if a user is already an entry in the database
-     * @param event - MessageReceivedEvent instance generated when the bot
-     * a message the bot can read it received.
-     * @param conn- connection to the wanted database
-     */
-    public Boolean checkExists(MessageReceivedEvent event, Connection conn) throws SQLException{
-        //Select the user that sent the message to see if they exist
-        PreparedStatement prepstate = conn.prepareStatement("select discordName, discrim from APP.USERS where discordName = ? and discrim = ?");
-        prepstate.setString(1, event.getAuthor().getName());
-        prepstate.setString(2, event.getAuthor().getDiscriminator());
-        ResultSet rs = prepstate.executeQuery();
-        //If select found something this will return true.
-        return rs.next();
+     * finish - Ends the transaction on a connection and gives it back to the pool,
+     * rolling back and closing it if the work failed
+     * @param conn - the connection to finish with
+     * @param succeeded - true if the transaction was committed
+     */
+    private static void finish(PooledConnection conn, boolean succeeded){
+        Connection connection = conn.getConnection();
+        if(succeeded){
+            boolean reset = false;
+            try{
+                connection.setAutoCommit(true);
+                reset = true;
+            }
+            catch(SQLException ex){
+                //The work is already committed, only the connection is lost
+                Logger.getLogger(DatabaseOps.class.getName()).log(Level.WARNING, null, ex);
+            }
+            finally{
+                //Always give back the permit so the pool does not shrink
+                if(reset)
+                    release(conn);
+                else
+                    discard(conn);
+            }
+            return;
+        }
+        try{
+            connection.rollback();
+        }
+        catch(SQLException ex){
+            Logger.getLogger(DatabaseOps.class.getName()).log(Level.WARNING, null, ex);
+        }
+        discard(conn);
+    }
+
+    /**
+     * dbUpdateBatch - Updates the database by adding to each users command call counts
+     * in one transaction. Users and commands not in the database yet are added first,
+     * then every count goes through the same merge statement.
+     * @param counts - Map of the user and command to the number of uses to add
+     */
+    public void dbUpdateBatch(Map<UsageTracker.UsageKey, LongAdder> counts) throws SQLException{
+        PooledConnection conn = borrow();
+        boolean succeeded = false;
+        Map<String, Integer> addedUsers = new HashMap<>();
+        Map<String, Integer> addedCommands = new HashMap<>();
+        try {
+            conn.getConnection().setAutoCommit(false);
+            //Look up the ids first so the merge statement is the only one in the batch
+            List<int[]> ids = new ArrayList<>(counts.size());
+            List<Long> uses = new ArrayList<>(counts.size());
+            for(Map.Entry<UsageTracker.UsageKey, LongAdder> entry : counts.entrySet()){
+                UsageTracker.UsageKey key = entry.getKey();
+                ids.add(new int[]{userId(conn, key, addedUsers), commandId(conn, key.getCommand(), addedCommands)});
+                uses.add(entry.getValue().sum());
+            }
+            PreparedStatement prepstate = conn.prepare(USAGE_MERGE);
+            for(int i = 0; i < ids.size(); i++){
+                int[] id = ids.get(i);
+                prepstate.setInt(1, id[0]);
+                prepstate.setInt(2, id[1]);
+                prepstate.setLong(3, uses.get(i));
+                prepstate.setInt(4, id[0]);
+                prepstate.setInt(5, id[1]);
+                prepstate.setLong(6, uses.get(i));
+                prepstate.addBatch();
+            }
+            prepstate.executeBatch();
+            conn.getConnection().commit();
+            succeeded = true;
+        }
+        finally {
+            finish(conn, succeeded);
+        }
+        //The added users and commands are in the database now
+        userIds.putAll(addedUsers);
+        COMMAND_IDS.putAll(addedCommands);
+    }
+
+    /**
+     * userId - Gets the id of a user, adding them with the next id from the sequence
+     * if they are not in the database
+     * @param conn - connection to the database
+     * @param key - the user and command
+     * @param added - users added in this transaction, the new user is put here
+     * @return int - the users id
+     */
+    private int userId(PooledConnection conn, UsageTracker.UsageKey key, Map<String, Integer> added) throws SQLException{
+        String user = userKey(key);
+        Integer id = userIds.get(user);
+        if(id == null)
+            id = added.get(user);
+        if(id != null)
+            return id;
+        PreparedStatement prepstate = conn.prepare("merge into APP.USERS u using SYSIBM.SYSDUMMY1 "
+                + "on u.discordName = ? and u.discrim = ? when not matched then insert (user_id, discordName, discrim) "
+                + "values (next value for APP.USER_ID_SEQ, ?, ?)");
+        prepstate.setString(1, key.getDiscordName());
+        prepstate.setString(2, key.getDiscrim());
+        prepstate.setString(3, key.getDiscordName());
+        prepstate.setString(4, key.getDiscrim());
+        prepstate.executeUpdate();
+        //Older tables can hold a user more than once, always use their first row
+        prepstate = conn.prepare("select min(user_id) from APP.USERS where discordName = ? and discrim = ?");
+        prepstate.setString(1, key.getDiscordName());
+        prepstate.setString(2, key.getDiscrim());
+        try(ResultSet rs = prepstate.executeQuery()){
+            rs.next();
+            id = rs.getInt(1);
+        }
+        added.put(user, id);
+        return id;
+    }
+
+    /**
+     * commandId - Gets the id of a command, adding it to the dictionary if it is new
+     * @param conn - connection to the database
+     * @param command - name of the command
+     * @param added - commands added in this transaction, the new command is put here
+     * @return int - the commands id
+     */
+    private static int commandId(PooledConnection conn, String command, Map<String, Integer> added) throws SQLException{
+        Integer id = COMMAND_IDS.get(command);
+        if(id == null)
+            id = added.get(command);
+        if(id != null)
+            return id;
+        addCommand(conn, command);
+        added.putAll(loadCommands(conn));
+        return added.get(command);
+    }
+
+    /**
+     * topCommands - Gets the most used commands across all users
+     * @param limit - most commands to get
+     * @return Map - keys are command names, values are their total uses, most used first
+     */
+    public Map<String, Long> topCommands(int limit) throws SQLException{
+        return topTotals("select c.name, t.total from (select command_id, sum(uses) as total from APP.COMMAND_USAGE "
+                + "group by command_id) t join APP.COMMANDS c on c.command_id = t.command_id "
+                + "order by t.total desc fetch first ? rows only", limit);
+    }
+
+    /**
+     * topUsers - Gets the users that have used the most commands
+     * @param limit - most users to get
+     * @return Map - keys are users as name#discriminator, values are their total uses, most uses first
+     */
+    public Map<String, Long> topUsers(int limit) throws SQLException{
+        return topTotals("select u.discordName || '#' || u.discrim, t.total from (select user_id, sum(uses) as total "
+                + "from APP.COMMAND_USAGE group by user_id) t join APP.USERS u on u.user_id = t.user_id "
+                + "order by t.total desc fetch first ? rows only", limit);
+    }
+
+    /**
+     * topTotals - Runs a query of names and totals
+     * @param sql - the query, with the row limit as its only parameter
+     * @param limit - most rows to get
+     * @return Map - keys are the names, values are the totals, in query order
+     */
+    private static Map<String, Long> topTotals(String sql, int limit) throws SQLException{
+        PooledConnection conn = borrow();
+        boolean succeeded = false;
+        Map<String, Long> totals = new LinkedHashMap<>();
+        try{
+            PreparedStatement prepstate = conn.prepare(sql);
+            prepstate.setInt(1, limit);
+            try(ResultSet rs = prepstate.executeQuery()){
+                while(rs.next())
+                    totals.put(rs.getString(1), rs.getLong(2));
+            }
+            succeeded = true;
+        }
+        finally{
+            if(succeeded)
+                release(conn);
+            else
+                discard(conn);
+        }
+        return totals;
+    }
+
+    /**
+     * userKey - Gets the key of a user in the user id map
+     * @param key - the user and command
+     * @return String - the users name and discriminator
+     */
+    private static String userKey(UsageTracker.UsageKey key){
+        return key.getDiscordName() + "#" + key.getDiscrim();
     }
 }
@@ -0,0 +1,358 @@
+package gamebot;
+
+import com.merakianalytics.datapipelines.DataStore;
+import com.merakianalytics.datapipelines.PipelineContext;
+import com.merakianalytics.datapipelines.iterators.CloseableIterator;
+import com.merakianalytics.orianna.datapipeline.common.expiration.ExpirationPeriod;
+import com.merakianalytics.orianna.types.UniqueKeys;
+import com.merakianalytics.orianna.types.dto.DataObject;
+import com.merakianalytics.orianna.types.dto.championmastery.ChampionMasteries;
+import com.merakianalytics.orianna.types.dto.league.SummonerPositions;
+import com.merakianalytics.orianna.types.dto.spectator.CurrentGameInfo;
+import com.merakianalytics.orianna.types.dto.staticdata.ChampionList;
+import com.merakianalytics.orianna.types.dto.staticdata.ItemList;
+import com.merakianalytics.orianna.types.dto.staticdata.LanguageStrings;
+import com.merakianalytics.orianna.types.dto.staticdata.Languages;
+import com.merakianalytics.orianna.types.dto.staticdata.MapData;
+import com.merakianalytics.orianna.types.dto.staticdata.ProfileIconData;
+import com.merakianalytics.orianna.types.dto.staticdata.Realm;
+import com.merakianalytics.orianna.types.dto.staticdata.ReforgedRuneTree;
+import com.merakianalytics.orianna.types.dto.staticdata.SummonerSpellList;
+import com.merakianalytics.orianna.types.dto.staticdata.Versions;
+import com.merakianalytics.orianna.types.dto.summoner.Summoner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Purpose: Orianna pipeline element that keeps Riot API responses on disk so
+ * they outlive a restart. It sits after the InMemoryCache and before DataDragon
+ * and the RiotAPI, storing the raw DTOs each one returns with the same
+ * per type expiration periods as the InMemoryCache. Each response is one file
+ * named by Orianna's unique key for it, written to a temp file then moved into
+ * place so a crash never leaves a half written entry. Expired entries are
+ * swept out on a schedule so the folder does not grow while the bot runs.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * TYPES                Map of each stored DTO class to how it is keyed and which expiration period it uses
+ * SWEEPER              ScheduledExecutorService that deletes expired entries
+ * SWEEPS               ConcurrentHashMap - keys are cache folders, values are their scheduled sweeps
+ *
+ * private final
+ *
+ * directory            Path the entries are kept under, one folder per type
+ * expirations          Map of each stored DTO class to its expiration period in milliseconds
+ *
+ */
+public class DiskCache implements DataStore {
+    private static final Map<Class<?>, StoredType<?>> TYPES = createTypes();
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(CommandExecutor.namedThreads("riot-cache-sweep"));
+    private static final Map<Path, ScheduledFuture<?>> SWEEPS = new ConcurrentHashMap<>();
+    private final Path directory;
+    private final Map<Class<?>, Long> expirations = new HashMap<>();
+
+    /**
+     * Purpose: Settings of the disk cache read from the Orianna config
+     *
+     * Variables            Description
+     *
+     * directory            Folder the entries are kept in
+     * sweepMinutes         Minutes between sweeps of the expired entries
+     * expirationPeriods    Map of core type names to how long they are kept, the same as the InMemoryCache
+     */
+    public static class Configuration {
+        private String directory = "riot-cache";
+        private long sweepMinutes = 30;
+        private Map<String, ExpirationPeriod> expirationPeriods = Collections.emptyMap();
+
+        public String getDirectory(){
+            return directory;
+        }
+
+        public void setDirectory(String directory){
+            this.directory = directory;
+        }
+
+        public long getSweepMinutes(){
+            return sweepMinutes;
+        }
+
+        public void setSweepMinutes(long sweepMinutes){
+            this.sweepMinutes = sweepMinutes;
+        }
+
+        public Map<String, ExpirationPeriod> getExpirationPeriods(){
+            return expirationPeriods;
+        }
+
+        public void setExpirationPeriods(Map<String, ExpirationPeriod> expirationPeriods){
+            this.expirationPeriods = expirationPeriods;
+        }
+    }
+
+    /**
+     * Purpose: How one DTO type is keyed
+     *
+     * Variables            Description
+     *
+     * coreType             Name of the core type whose expiration period is used
+     * queryKey             Unique key of a query for the type
+     * objectKeys           Unique keys the type can be found by
+     */
+    private static class StoredType<T> {
+        private final String coreType;
+        private final ToIntFunction<Map<String, Object>> queryKey;
+        private final Function<T, int[]> objectKeys;
+
+        private StoredType(String coreType, ToIntFunction<Map<String, Object>> queryKey, Function<T, int[]> objectKeys){
+            this.coreType = coreType;
+            this.queryKey = queryKey;
+            this.objectKeys = objectKeys;
+        }
+    }
+
+    public DiskCache(){
+        this(new Configuration());
+    }
+
+    /**
+     * @param config - Configuration read from the Orianna config
+     */
+    public DiskCache(Configuration config){
+        directory = Paths.get(config.getDirectory());
+        for(Map.Entry<Class<?>, StoredType<?>> type : TYPES.entrySet()){
+            ExpirationPeriod period = config.getExpirationPeriods().get(type.getValue().coreType);
+            //Types without a period are not kept
+            if(period != null && period.getPeriod() > 0)
+                expirations.put(type.getKey(), period.getUnit().toMillis(period.getPeriod()));
+        }
+        //Clear out entries that expired while the bot was down without slowing startup, then keep
+        //clearing them. A reloaded config replaces the sweep of the cache it replaces
+        ScheduledFuture<?> sweep = SWEEPER.scheduleWithFixedDelay(this::sweep, 0, Math.max(1, config.getSweepMinutes()), TimeUnit.MINUTES);
+        ScheduledFuture<?> replaced = SWEEPS.put(directory.toAbsolutePath(), sweep);
+        if(replaced != null)
+            replaced.cancel(false);
+    }
+
+    @Override
+    public Set<Class<?>> provides(){
+        return Collections.unmodifiableSet(expirations.keySet());
+    }
+
+    @Override
+    public Set<Class<?>> accepts(){
+        return Collections.unmodifiableSet(expirations.keySet());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Class<T> type, Map<String, Object> query, PipelineContext context){
+        StoredType<?> stored = TYPES.get(type);
+        if(stored == null || !expirations.containsKey(type))
+            return null;
+        Path entry;
+        try{
+            entry = entry(type, stored.queryKey.applyAsInt(query));
+        }
+        catch(RuntimeException ex){
+            //A query the key can not be made from is a miss
+            return null;
+        }
+        try{
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(entry));
+            if(bytes.getLong() < System.currentTimeMillis()){
+                Files.deleteIfExists(entry);
+                return null;
+            }
+            byte[] body = new byte[bytes.remaining()];
+            bytes.get(body);
+            return (T)DataObject.fromBytes((Class<? extends DataObject>)type, body);
+        }
+        catch(NoSuchFileException ex){
+            return null;
+        }
+        catch(IOException | RuntimeException ex){
+            //A broken entry is dropped and fetched again
+            Logger.getLogger(DiskCache.class.getName()).log(Level.WARNING, null, ex);
+            delete(entry);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> CloseableIterator<T> getMany(Class<T> type, Map<String, Object> query, PipelineContext context){
+        //Many queries are left to the sources after this one
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void put(Class<T> type, T item, PipelineContext context){
+        StoredType<T> stored = (StoredType<T>)TYPES.get(type);
+        Long expiration = expirations.get(type);
+        if(stored == null || expiration == null || item == null)
+            return;
+        try{
+            byte[] body = ((DataObject)item).toBytes();
+            ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES + body.length);
+            bytes.putLong(System.currentTimeMillis() + expiration).put(body);
+            for(int key : stored.objectKeys.apply(item))
+                write(entry(type, key), bytes.array());
+        }
+        catch(IOException | RuntimeException ex){
+            Logger.getLogger(DiskCache.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    @Override
+    public <T> void putMany(Class<T> type, Iterable<T> items, PipelineContext context){
+        for(T item : items)
+            put(type, item, context);
+    }
+
+    /**
+     * entry - Gets the file an entry is kept in
+     * @param type - DTO class of the entry
+     * @param key - unique key of the entry
+     * @return Path - the entries file
+     */
+    private Path entry(Class<?> type, int key){
+        return directory.resolve(type.getSimpleName()).resolve(Integer.toHexString(key));
+    }
+
+    /**
+     * write - Writes an entry so it is never seen half written
+     * @param entry - the entries file
+     * @param bytes - expiration time followed by the DTO
+     */
+    private static void write(Path entry, byte[] bytes) throws IOException{
+        Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+        try{
+            Files.write(temp, bytes);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally{
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * delete - Deletes an entry, ignoring entries that are already gone
+     * @param entry - the entries file
+     */
+    private static void delete(Path entry){
+        try{
+            Files.deleteIfExists(entry);
+        }
+        catch(IOException ex){
+            Logger.getLogger(DiskCache.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * sweep - Deletes every expired entry and any temp file left by a crash
+     */
+    private void sweep(){
+        if(!Files.isDirectory(directory))
+            return;
+        long now = System.currentTimeMillis();
+        try(DirectoryStream<Path> types = Files.newDirectoryStream(directory)){
+            for(Path type : types){
+                if(!Files.isDirectory(type))
+                    continue;
+                try(DirectoryStream<Path> entries = Files.newDirectoryStream(type)){
+                    for(Path entry : entries){
+                        if(entry.getFileName().toString().endsWith(".tmp") || expiresAt(entry) < now)
+                            delete(entry);
+                    }
+                }
+            }
+        }
+        //Caught so a failed sweep does not stop the ones after it
+        catch(IOException | RuntimeException ex){
+            Logger.getLogger(DiskCache.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * expiresAt - Reads when an entry expires without reading the rest of it
+     * @param entry - the entries file
+     * @return long - epoch milliseconds the entry expires at, 0 if it can not be read
+     */
+    private static long expiresAt(Path entry){
+        try(FileChannel channel = FileChannel.open(entry)){
+            ByteBuffer expiration = ByteBuffer.allocate(Long.BYTES);
+            int read = 0;
+            while(expiration.hasRemaining() && read >= 0)
+                read = channel.read(expiration);
+            return expiration.hasRemaining() ? 0 : expiration.getLong(0);
+        }
+        catch(IOException ex){
+            return 0;
+        }
+    }
+
+    /**
+     * createTypes - Creates the keying of every DTO type the cache can keep. Keys are
+     * Orianna's own so a query finds what the matching response was put under.
+     * @return types - Map of DTO classes to how they are keyed
+     */
+    private static Map<Class<?>, StoredType<?>> createTypes(){
+        String core = "com.merakianalytics.orianna.types.core.";
+        Map<Class<?>, StoredType<?>> types = new HashMap<>();
+        types.put(Summoner.class, new StoredType<Summoner>(core + "summoner.Summoner",
+                UniqueKeys::forSummonerDtoQuery, UniqueKeys::forSummonerDto));
+        types.put(SummonerPositions.class, new StoredType<SummonerPositions>(core + "league.LeaguePositions",
+                UniqueKeys::forSummonerPositionsDtoQuery, (item) -> new int[]{UniqueKeys.forSummonerPositionsDto(item)}));
+        types.put(ChampionMasteries.class, new StoredType<ChampionMasteries>(core + "championmastery.ChampionMasteries",
+                UniqueKeys::forChampionMasteriesDtoQuery, (item) -> new int[]{UniqueKeys.forChampionMasteriesDto(item)}));
+        types.put(CurrentGameInfo.class, new StoredType<CurrentGameInfo>(core + "spectator.CurrentMatch",
+                UniqueKeys::forCurrentGameInfoDtoQuery, (item) -> new int[]{UniqueKeys.forCurrentGameInfoDto(item)}));
+        types.put(ChampionList.class, new StoredType<ChampionList>(core + "staticdata.Champions",
+                UniqueKeys::forChampionListDtoQuery, (item) -> new int[]{UniqueKeys.forChampionListDto(item)}));
+        types.put(ItemList.class, new StoredType<ItemList>(core + "staticdata.Items",
+                UniqueKeys::forItemListDtoQuery, (item) -> new int[]{UniqueKeys.forItemListDto(item)}));
+        types.put(MapData.class, new StoredType<MapData>(core + "staticdata.Maps",
+                UniqueKeys::forMapDataDtoQuery, (item) -> new int[]{UniqueKeys.forMapDataDto(item)}));
+        types.put(SummonerSpellList.class, new StoredType<SummonerSpellList>(core + "staticdata.SummonerSpells",
+                UniqueKeys::forSummonerSpellListDtoQuery, (item) -> new int[]{UniqueKeys.forSummonerSpellListDto(item)}));
+        types.put(ProfileIconData.class, new StoredType<ProfileIconData>(core + "staticdata.ProfileIcons",
+                UniqueKeys::forProfileIconDataDtoQuery, (item) -> new int[]{UniqueKeys.forProfileIconDataDto(item)}));
+        types.put(ReforgedRuneTree.class, new StoredType<ReforgedRuneTree>(core + "staticdata.ReforgedRunes",
+                UniqueKeys::forReforgedRuneTreeDtoQuery, (item) -> new int[]{UniqueKeys.forReforgedRuneTreeDto(item)}));
+        types.put(Realm.class, new StoredType<Realm>(core + "staticdata.Realm",
+                UniqueKeys::forRealmDtoQuery, (item) -> new int[]{UniqueKeys.forRealmDto(item)}));
+        types.put(Versions.class, new StoredType<Versions>(core + "staticdata.Versions",
+                UniqueKeys::forVersionsDtoQuery, (item) -> new int[]{UniqueKeys.forVersionsDto(item)}));
+        types.put(Languages.class, new StoredType<Languages>(core + "staticdata.Languages",
+                UniqueKeys::forLanguagesDtoQuery, (item) -> new int[]{UniqueKeys.forLanguagesDto(item)}));
+        types.put(LanguageStrings.class, new StoredType<LanguageStrings>(core + "staticdata.LanguageStrings",
+                UniqueKeys::forLanguageStringsDtoQuery, (item) -> new int[]{UniqueKeys.forLanguageStringsDto(item)}));
+        return types;
+    }
+}
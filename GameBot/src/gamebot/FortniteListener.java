@@ -5,31 +5,25 @@
  */
 package gamebot;
 
-import com.google.common.util.concurrent.RateLimiter;
-import java.io.BufferedReader;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.net.ssl.HttpsURLConnection;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.core.hooks.ListenerAdapter;
-import org.apache.commons.lang.StringUtils;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import okhttp3.Headers;
 
 /**
- *Purpose: This class implements a ListenerAdapter for a discord bot. It checks
- * for all the Fortnite related commands. The listener outputs data from
+ *Purpose: This class implements a CommandHandler for a discord bot. It handles
+ * all the Fortnite related commands. The listener outputs data from
  * the FortniteTracker API through the use of HTTPS 'GET' requests
  * 
  * @author Colin Keys
@@ -38,182 +32,178 @@ import org.json.JSONObject;
  * 
  * private
  * 
- * MODE_MAP                 HashMap of FortniteTrackers API keys for game modes to more user friendly strings
+ * MAX_COMPARE              Most players that can be compared at once, no more than the rate limit can look up in time
+ * TOP_RANKS                Number of players listed for each stat when comparing more than two
+ * HELP_TEXT                Reply to !fnHelp
+ * BASE_URL                 FortniteTracker API url the profile paths are added to
+ * STAT_LINE                Template of one stat of a player
  * platformList             List of all the API platforms
- * totalModes               List of all the API lifetime game modes
- * currModes                List of all the API current season game modes
- * dbOps                    DataboseOps object for database operations
- * throttler                RateLimiter to throttle request to the API
- * playerJson               JSONObject to hold the currently requested players statistics
+ * usage                    UsageTracker to count command uses
+ * profileCache             Cache of requested players stats, keyed on platform and lower case name
  * 
  */
-public class FortniteListener extends ListenerAdapter {
-    private static final Map<String, String> MODE_MAP = createModeMap();
+public class FortniteListener implements CommandHandler {
+    private static final int MAX_COMPARE = Math.max(2, Math.min(16, RateLimits.FORTNITE.getMaxBatch()));
+    private static final int TOP_RANKS = 3;
+    private static final String HELP_TEXT = "__**Fortnite Commands**__\n"
+            + "**All Fortnite commands default to PC!** If you would like to check xbox or ps4 stats please put a **colon ( : )** "
+            + "after your name then the console **PSN or XBL** (case insensitive). Ex: StankBank Frank:xbl or nickmercs:psn\n"
+            + "**!fnLifetime <epicgames_name>:** Outputs stats for lifetime solos, duos, and squads about given ***epicgames_name*** "
+            + "on pc or the specified platform played platform\n"
+            + "**!fnCurrent <epicgames_name>:** Outputs stats for the current seasons solos, duos, and squads about given "
+            + "***epicgames_name*** on pc or the specified platform platform\n"
+            + "**!fnCompare <epicgames_name>;<epicgames_name>[;...]:** Compares and outputs lifetime solos, duos, and squads about "
+            + "given ***epicgames_name***'s on pc or the specified platform (Split player names with a semicolon). Up to "
+            + MAX_COMPARE + " players can be compared, more than two are ranked on each stat\n";
+    private static final String BASE_URL = GameBot.config.getProperty("fnBaseUrl", "https://api.fortnitetracker.com");
+    private static final Template STAT_LINE = Template.compile("**{}:** {}\n");
     private final List<String> platformList = Arrays.asList("pc", "psn", "xbl");
-    private final List<String> totalModes = Arrays.asList("p2", "p10", "p9");
-    private final List<String> currModes = Arrays.asList("curr_p2", "curr_p10", "curr_p9");
-    private final DatabaseOps dbOps = new DatabaseOps();
-    //1 request per 2 seconds
-    private final RateLimiter throttle = RateLimiter.create(0.5);
+    private final UsageTracker usage;
+    private final Cache<String, CompletableFuture<FortnitePlayer>> profileCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(Long.parseLong(GameBot.config.getProperty("fnCacheTtlMinutes", "10")), TimeUnit.MINUTES)
+            .maximumSize(Long.parseLong(GameBot.config.getProperty("fnCacheSize", "1000")))
+            .recordStats()
+            .build();
+    
+    public FortniteListener(UsageTracker usage){
+        this.usage = usage;
+        Metrics.gauge(Metrics.name("cache_hit_ratio", "cache", "fortnite_profiles"), () -> profileCache.stats().hitRate());
+    }
+    
+    /**
+     * registerCommands - Registers the Fortnite commands with the dispatcher
+     * @param dispatcher - CommandDispatcher to route the commands from
+     */
+    public void registerCommands(CommandDispatcher dispatcher){
+        dispatcher.register(this, "fnHelp", "fnLifetime", "fnCurrent");
+        //Compares make a throttled request for each player
+        dispatcher.register(this, 30, 10, "fnCompare");
+    }
     
     /**
-     * onMessageReceived - Handles the Listeners actions when a message is received
-     * in a channel the bot has read access to.
+     * onCommand - Handles the Fortnite commands routed from the dispatcher
      * @param event - MessageReceivedEvent instance generated when the bot
      * a message the bot can read it received.
+     * @param command - the command name without the prefix
+     * @param args - CommandArgs of the arguments given after the command
      */
     @Override
-    public void onMessageReceived(MessageReceivedEvent event){
+    public void onCommand(MessageReceivedEvent event, String command, CommandArgs args){
         try {
-            //Get the readable contents of the message
-            String message = event.getMessage().getContentDisplay();
-            //Dont respond to other bots, this bot, and only handle league commands
-            if (event.getAuthor().isBot() || !message.startsWith(GameBot.config.getProperty("prefix") + "fn")) return;
-            //Split the args on a space to get them all
-            ArrayList<String> args = new ArrayList<>(Arrays.asList(message.split(" ")));
-            //Get the command without the prefix
-            String command = args.get(0).substring(1);
-            //Remove the command from the argument list
-            args.remove(0);
-            //Array for the players jsons
-            ArrayList<JSONObject> jsonArray = new ArrayList<>();
+            //Array for the compared players
+            ArrayList<FortnitePlayer> fnPlayers = new ArrayList<>();
             //Get number of args
             int numArgs = args.size();
             //For output formatting
             StringBuilder outputString = new StringBuilder();
-            //Hold current json
-            JSONObject playerJson;
-            //For proper username
-            String epicName;
+            //Hold current player
+            FortnitePlayer player;
+            //Platform and name of the requested player
+            String[] request;
             //Switch used to process the command given
             switch(command){
                 //Outputs all the Fortnite related commands
                 case "fnHelp":
-                    outputString.setLength(0);
-                    outputString.append("__**Fortnite Commands**__\n");
-                    outputString.append("**All Fortnite commands default to PC!** If you would like to check xbox or ps4 "
-                            + "stats please put a **colon ( : )** after your name then the console **PSN or XBL** (case insensitive). Ex: StankBank Frank:xbl or nickmercs:psn\n");
-                    outputString.append("**!fnLifetime <epicgames_name>:** Outputs stats for lifetime"
-                            + " solos, duos, and squads about given ***epicgames_name*** on pc or the specified platform played platform\n");
-                    outputString.append("**!fnCurrent <epicgames_name>:** Outputs stats for the current seasons"
-                            + " solos, duos, and squads about given ***epicgames_name*** on pc or the specified platform platform\n");
-                    outputString.append("**!fnCompare <epicgames_name>;<epicgames_name>:** Compares and outputs lifetime"
-                            + " solos, duos, and squads about given ***epicgames_name***'s on pc or the specified platform (Split player names with a semicolon)\n");
                     //Send message in channel it was received
-                    event.getChannel().sendMessage(outputString.toString()).queue();
+                    Replies.send(event.getChannel(), HELP_TEXT);
                     //Add use to db
-                    dbOps.dbUpdate(event, "fnHelp");
+                    usage.increment(event, "fnHelp");
                     break;
                     //Outputs a players lifetime totals and lifetime solos,duos, and squads totals
                 case "fnLifetime":
                     //Must have a name to search for
                     if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !fnLifetime <Epic_Name>[:console]**").queue();
+                        Replies.send(event.getChannel(), "**Usage: !fnLifetime <Epic_Name>[:console]**");
                         break;
                     }
                     //Incase they had a space in their epic name
-                    epicName = StringUtils.join(args, ' ');
-                    if(epicName.contains(":"))
-                        playerJson = makeRequest(epicName.substring(epicName.indexOf(":")+1), epicName.substring(0, epicName.indexOf(":")));
-                    else
-                        playerJson = makeRequest("pc", epicName);
-                    
-                    if(playerJson.has("error")){
-                        if(epicName.contains(":")){
-                            playerNotFound(epicName.substring(0, epicName.indexOf(":")), event);
-                            //dbOps.dbUpdate(event, "fnLifetime");
-                        }
-                        else{
-                            playerNotFound(epicName, event);
-                            //dbOps.dbUpdate(event, "fnLifetime");
-                        }
+                    request = platformAndName(args.rest(0));
+                    player = makeRequest(request[0], request[1], RateLimits.guildKey(event));
+                    if(player == null){
+                        playerNotFound(request[1], event);
+                        usage.increment(event, "fnLifetime");
                         break;
                     }
                     //Format the players header
-                    outputString.append(playerHeader(playerJson));
+                    outputString.append(playerHeader(player));
                     //Get the players lifetime totals
-                    outputString.append(getLifeTimeStats(playerJson)).append("\n\n");
+                    outputString.append(getGameModeStats(player, FortnitePlayer.Mode.LIFETIME)).append("\n\n");
                     //For each game mode get and display the players stats
-                    for(String mode : totalModes)
-                        outputString.append(getGameModeStats(playerJson, mode)).append("\n\n");
+                    for(FortnitePlayer.Mode mode : FortnitePlayer.Mode.values()){
+                        if(mode != FortnitePlayer.Mode.LIFETIME && !mode.isCurrent())
+                            outputString.append(getGameModeStats(player, mode)).append("\n\n");
+                    }
                     //Send a message in the channel it was recieved
-                    event.getChannel().sendMessage(outputString.toString()).queue();
+                    Replies.send(event.getChannel(), outputString.toString());
                     //Add use to db
-                    //dbOps.dbUpdate(event, "fnLifetime");
+                    usage.increment(event, "fnLifetime");
                     break;
                     //Outputs a players current season totals and current season solos,duos, and squads totals
                 case "fnCurrent":
                     //Must have a name to search for
                     if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !fnCurrent <Epic_Name>[:console]**").queue();
+                        Replies.send(event.getChannel(), "**Usage: !fnCurrent <Epic_Name>[:console]**");
                         break;
                     }
                     //Incase they had a space in their epic name
-                    epicName = StringUtils.join(args, ' ');
-                   if(epicName.contains(":"))
-                        playerJson = makeRequest(epicName.substring(epicName.indexOf(":")+1), epicName.substring(0, epicName.indexOf(":")));
-                    else
-                        playerJson = makeRequest("pc", epicName);
-                    
-                    if(playerJson.has("error")){
-                        if(epicName.contains(":")){
-                            playerNotFound(epicName.substring(0, epicName.indexOf(":")), event);
-                            //dbOps.dbUpdate(event, "fnCurrent");
-                        }
-                        else{
-                            playerNotFound(epicName, event);
-                            //dbOps.dbUpdate(event, "fnCurrent");
-                        }
+                    request = platformAndName(args.rest(0));
+                    player = makeRequest(request[0], request[1], RateLimits.guildKey(event));
+                    if(player == null){
+                        playerNotFound(request[1], event);
+                        usage.increment(event, "fnCurrent");
                         break;
                     }
                     //Format the players header
-                    outputString.append(playerHeader(playerJson));
+                    outputString.append(playerHeader(player));
                     //Get the players current season totals
-                    outputString.append(getCurrentTotalStats(playerJson)).append("\n\n");
+                    outputString.append(getCurrentTotalStats(player)).append("\n\n");
                     //For each game mode get and display the players stats
-                    for(String mode : currModes)
-                        outputString.append(getGameModeStats(playerJson, mode)).append("\n\n");
+                    for(FortnitePlayer.Mode mode : FortnitePlayer.Mode.values()){
+                        if(mode.isCurrent())
+                            outputString.append(getGameModeStats(player, mode)).append("\n\n");
+                    }
                     //Send a message in the channel it was recieved
-                    event.getChannel().sendMessage(outputString.toString()).queue();
+                    Replies.send(event.getChannel(), outputString.toString());
                     //Add use to db
-                    //dbOps.dbUpdate(event, "fnCurrent");
+                    usage.increment(event, "fnCurrent");
                     break;
                 case "fnCompare":
                      //Must have a name to search for
-                    if(numArgs < 1 || !StringUtils.join(args, ' ').contains(";")){
-                        event.getChannel().sendMessage("**Usage: !fnCompare <Epic_Name>[:console];<Epic_Name>[:console]\nMake "
-                                + "sure there is a semicolon ( ; ) seperating the player names**").queue();
+                    if(numArgs < 1 || CommandArgs.indexOf(args.rest(0), ';') < 0){
+                        Replies.send(event.getChannel(), "**Usage: !fnCompare <Epic_Name>[:console];<Epic_Name>[:console][;...]\nMake "
+                                + "sure there is a semicolon ( ; ) seperating the player names**");
+                        break;
+                    }
+                    //Get player names, skipping empty ones
+                    List<String[]> requests = new ArrayList<>();
+                    for(CharSequence playerName : CommandArgs.split(args.rest(0), ';'))
+                        requests.add(platformAndName(playerName));
+                    if(requests.size() < 2 || requests.size() > MAX_COMPARE){
+                        Replies.send(event.getChannel(), "**Compare between 2 and " + MAX_COMPARE + " players, "
+                                + "seperated by semicolons ( ; )**");
                         break;
                     }
-                    //Get player names
-                    ArrayList<String> playerNames = new ArrayList<>(Arrays.asList(StringUtils.join(args, ' ').split(";")));
-                    for(String player : playerNames){
-                        if(player.contains(":"))
-                            playerJson = makeRequest(player.substring(player.indexOf(":")+1), player.substring(0, player.indexOf(":")));
-                        else
-                            playerJson = makeRequest("pc", player);
-                    
-                        if(playerJson.has("error")){
+                    //Request every player at once
+                    for(FortnitePlayer requested : makeRequests(requests, RateLimits.guildKey(event))){
+                        if(requested == null){
                             playerNotFound("One of the given players", event);
-                            //dbOps.dbUpdate(event, "fnCompare");
+                            usage.increment(event, "fnCompare");
                             return;
                         }
-                        jsonArray.add(playerJson);
+                        fnPlayers.add(requested);
                     }
-                    //Set each players lifetime stats
-                    ArrayList<FortnitePlayer> fnPlayers = new ArrayList<>();
-                    for(JSONObject player : jsonArray)
-                        fnPlayers.add(setPlayerStats(player));
-                    outputString.append(comparePlayerStats(fnPlayers));
-                    event.getChannel().sendMessage(outputString.toString()).queue();
+                    //Two players are shown side by side, more are ranked
+                    if(fnPlayers.size() == 2)
+                        outputString.append(comparePlayerStats(fnPlayers));
+                    else
+                        outputString.append(rankPlayerStats(fnPlayers));
+                    Replies.send(event.getChannel(), outputString.toString());
                     //Add use to db
-                    //dbOps.dbUpdate(event, "fnCompare");
+                    usage.increment(event, "fnCompare");
                     break;
             }
-        } catch (SQLException | IllegalAccessException ex) {
-            Logger.getLogger(FortniteListener.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (ProtocolException ex) {
-            Logger.getLogger(FortniteListener.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (BusyException ex) {
+            Replies.send(event.getChannel(), ex.getMessage());
         } catch (IOException ex) {
             Logger.getLogger(FortniteListener.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -223,88 +213,134 @@ public class FortniteListener extends ListenerAdapter {
      * makeRequest - Makes a request to the FortniteTracker API to get the given players information
      * @param platform - A String indicating the platform the player is on
      * @param epicName - A String of the players EpicGames name
-     * @return obj - A JSONObject containing all the player information given from the API 
+     * @param guildKey - key of the guild the request is for
+     * @return FortnitePlayer - the players stats given from the API, null if the player was not found
+     */
+    private FortnitePlayer makeRequest(String platform, String epicName, String guildKey) throws IOException{
+        return makeRequests(Collections.singletonList(new String[]{platform, epicName}), guildKey).get(0);
+    }
+    
+    /**
+     * makeRequests - Makes a batch of requests to the FortniteTracker API at once. Players
+     * already in the cache are not requested, the rest are queued on the FortniteTracker 
+     * bucket and every request is waited on.
+     * @param requests - A List of {platform, epicName} pairs to request
+     * @param guildKey - key of the guild the requests are for
+     * @return players - ArrayList of the players stats in the same order as the requests, null for players not found
+     */
+    private ArrayList<FortnitePlayer> makeRequests(List<String[]> requests, String guildKey) throws IOException{
+        //Only players that are not cached need a permit
+        int misses = 0;
+        for(String[] request : requests){
+            if(profileCache.getIfPresent(cacheKey(request[0], request[1])) == null)
+                misses++;
+        }
+        //Turn the whole batch away if it can not all be sent in time
+        if(misses > 0)
+            RateLimits.FORTNITE.ensureCapacity(misses);
+        List<CompletableFuture<FortnitePlayer>> futures = new ArrayList<>();
+        for(String[] request : requests)
+            futures.add(cachedProfile(request[0], request[1], guildKey));
+        //Wait for the whole batch
+        try{
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        }
+        catch(CompletionException ex){
+            if(ex.getCause() instanceof IOException)
+                throw (IOException)ex.getCause();
+            throw ex;
+        }
+        ArrayList<FortnitePlayer> players = new ArrayList<>();
+        for(CompletableFuture<FortnitePlayer> future : futures)
+            players.add(future.join());
+        return players;
+    }
+    
+    /**
+     * cachedProfile - Gets the given players profile from the cache, requesting it if
+     * it is not cached. Users asking for the same player at once share one request.
+     * @param platform - A String indicating the platform the player is on
+     * @param epicName - A String of the players EpicGames name
+     * @param guildKey - key of the guild the request is for
+     * @return CompletableFuture - completes with the players stats, or null if they were not found
+     */
+    private CompletableFuture<FortnitePlayer> cachedProfile(String platform, String epicName, String guildKey){
+        String key = cacheKey(platform, epicName);
+        boolean[] loaded = new boolean[1];
+        try{
+            CompletableFuture<FortnitePlayer> profile = profileCache.get(key, () -> {
+                loaded[0] = true;
+                //Sent once the bucket gives a permit, without holding this thread
+                return RateLimits.FORTNITE.acquire(guildKey).thenCompose((permit) -> 
+                        ApiClient.getAsync(profileUrl(platform, epicName), apiHeaders(), FortniteStatsParser::parse, RateLimits.FORTNITE));
+            });
+            //Failed requests are not kept, not found players are. A request that just failed is not retried
+            if(profile.isCompletedExceptionally()){
+                profileCache.asMap().remove(key, profile);
+                if(!loaded[0])
+                    return cachedProfile(platform, epicName, guildKey);
+            }
+            profile.whenComplete((json, ex) -> {
+                if(ex != null)
+                    profileCache.asMap().remove(key, profile);
+            });
+            return profile;
+        }
+        catch(ExecutionException ex){
+            CompletableFuture<FortnitePlayer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex.getCause());
+            return failed;
+        }
+    }
+    
+    /**
+     * cacheKey - Creates the cache key of the given player
+     * @param platform - A String indicating the platform the player is on
+     * @param epicName - A String of the players EpicGames name
+     * @return String - the platform and lower case name of the player
+     */
+    private static String cacheKey(String platform, String epicName){
+        return platform.trim().toLowerCase() + ":" + epicName.trim().toLowerCase();
+    }
+    
+    /**
+     * profileUrl - Builds the FortniteTracker profile url for the given player
+     * @param platform - A String indicating the platform the player is on
+     * @param epicName - A String of the players EpicGames name
+     * @return urlString - the url of the players profile
      */
-    private JSONObject makeRequest(String platform, String epicName) throws MalformedURLException, ProtocolException, IOException{
+    private static String profileUrl(String platform, String epicName){
         //Replace spaces for proper url
         epicName = epicName.replace(" ", "%20");
         String urlString;
         platform = platform.toLowerCase();
         if(platform.equals("xbl"))
-            urlString = "https://api.fortnitetracker.com/v1/profile/xbox/" + platform + "(" + epicName + ")";
+            urlString = BASE_URL + "/v1/profile/xbox/" + platform + "(" + epicName + ")";
         else
-            urlString = "https://api.fortnitetracker.com/v1/profile/" + platform + "/" + epicName;
-        URL url = new URL(urlString);
-        //Make sure to throttle if needed
-        throttle.acquire();
-        //Create Connection
-        HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-        con.setRequestMethod("GET");
-        con.setRequestProperty("Accept", "application/json");
-        con.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11");
-        con.setRequestProperty("TRN-Api-Key", GameBot.config.getProperty("fnKey"));
-        int responseCode = con.getResponseCode();
-        
-        System.out.println("\nSending 'GET' request to URL : " + urlString);
-        System.out.println("Response Code : " + responseCode);
-        //Create json from outputed lines
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String inputLine;
-        StringBuilder response = new StringBuilder();
-        while ((inputLine = in.readLine()) != null) {
-           response.append(inputLine);
-        }
-        in.close();
-        JSONObject obj = new JSONObject(response.toString());
-        return obj;
+            urlString = BASE_URL + "/v1/profile/" + platform + "/" + epicName;
+        return urlString;
     }
     
     /**
-     * seetPlayerStats - Sets the lifetime statistics from the given playerStats JSONobject
-     * on a new FortnitePlayer
-     * @param playerStats - A JSONObject of the requested players statistics
-     * @return player - The created FortnitePlayer object
+     * apiHeaders - Gets the headers every FortniteTracker request is sent with
+     * @return Headers - the request headers
      */
-    private FortnitePlayer setPlayerStats(JSONObject playerStats){
-        //Initiate output stringbuilder and header
-        FortnitePlayer player = new FortnitePlayer(playerStats.getString("epicUserHandle"), playerStats.getString("platformName").toUpperCase());
-        JSONObject mode;
-        //Set lifetime totals
-        JSONArray lifetimeArray = playerStats.getJSONArray("lifeTimeStats");
-        player.setLifetimeGp(lifetimeArray.getJSONObject(7).getString("value"), "totalLifetime");
-        player.setLifetimeWins(lifetimeArray.getJSONObject(8).getString("value"), "totalLifetime");
-        player.setLifetimeWp(lifetimeArray.getJSONObject(9).getString("value"), "totalLifetime");
-        player.setLifetimeKills(lifetimeArray.getJSONObject(10).getString("value"), "totalLifetime");
-        player.setLifetimeKd(lifetimeArray.getJSONObject(11).getString("value"), "totalLifetime");
-        //Solo totals
-        if(playerStats.getJSONObject("stats").has("p2")){
-            mode = playerStats.getJSONObject("stats").getJSONObject("p2");
-            player.setLifetimeGp(mode.getJSONObject("matches").getString("displayValue"), "soloLifetime");
-            player.setLifetimeWins(mode.getJSONObject("top1").getString("displayValue"), "soloLifetime");
-            player.setLifetimeWp(mode.getJSONObject("winRatio").getString("displayValue") + "%", "soloLifetime");
-            player.setLifetimeKills(mode.getJSONObject("kills").getString("displayValue"), "soloLifetime");
-            player.setLifetimeKd(mode.getJSONObject("kd").getString("displayValue"), "soloLifetime");
-        }
-        //Duo totals
-        if(playerStats.getJSONObject("stats").has("p10")){
-            mode = playerStats.getJSONObject("stats").getJSONObject("p10");
-            player.setLifetimeGp(mode.getJSONObject("matches").getString("displayValue"), "duoLifetime");
-            player.setLifetimeWins(mode.getJSONObject("top1").getString("displayValue"), "duoLifetime");
-            player.setLifetimeWp(mode.getJSONObject("winRatio").getString("displayValue") + "%", "duoLifetime");
-            player.setLifetimeKills(mode.getJSONObject("kills").getString("displayValue"), "duoLifetime");
-            player.setLifetimeKd(mode.getJSONObject("kd").getString("displayValue"), "duoLifetime");
-        }
-        //Squad totals
-        if(playerStats.getJSONObject("stats").has("p9")){
-            mode = playerStats.getJSONObject("stats").getJSONObject("p9");
-            player.setLifetimeGp(mode.getJSONObject("matches").getString("displayValue"), "squadLifetime");
-            player.setLifetimeWins(mode.getJSONObject("top1").getString("displayValue"), "squadLifetime");
-            player.setLifetimeWp(mode.getJSONObject("winRatio").getString("displayValue") + "%", "squadLifetime");
-            player.setLifetimeKills(mode.getJSONObject("kills").getString("displayValue"), "squadLifetime");
-            player.setLifetimeKd(mode.getJSONObject("kd").getString("displayValue"), "squadLifetime");
-        }
-        
-        return player;
+    private static Headers apiHeaders(){
+        return Headers.of("Accept", "application/json",
+                "User-Agent", "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11",
+                "TRN-Api-Key", GameBot.config.getProperty("fnKey"));
+    }
+    
+    /**
+     * platformAndName - Splits a player given as name[:platform] into its platform and name
+     * @param player - the player as given in the command
+     * @return String[] - {platform, epicName}, platform is pc if none is given
+     */
+    private static String[] platformAndName(CharSequence player){
+        int colon = CommandArgs.indexOf(player, ':');
+        if(colon < 0)
+            return new String[]{"pc", player.toString()};
+        return new String[]{player.subSequence(colon+1, player.length()).toString(), player.subSequence(0, colon).toString()};
     }
     
     /**
@@ -313,130 +349,121 @@ public class FortniteListener extends ListenerAdapter {
      * @param fnPlayers - An ArrayList of the FortnitPlayer objects
      * @return tempString - A String of the wanted lifetime statistics
      */
-    private String comparePlayerStats(ArrayList<FortnitePlayer> fnPlayers){
+    String comparePlayerStats(ArrayList<FortnitePlayer> fnPlayers){
         //Create output string and variables to hold array objects
         StringBuilder tempString = new StringBuilder();
         FortnitePlayer playerOne = fnPlayers.get(0);
         FortnitePlayer playerTwo = fnPlayers.get(1);
-        //Compare stats
-        playerOne.compareAllLifetime(playerTwo, "totalLifetime");
-        playerOne.compareAllLifetime(playerTwo, "soloLifetime");
-        playerOne.compareAllLifetime(playerTwo, "duoLifetime");
-        playerOne.compareAllLifetime(playerTwo, "squadLifetime");
         //Make headers
         tempString.append("__**~ ").append(playerOne.getPlayerName()).append(" (").append(playerOne.getPlatform())
                 .append(")").append(" | ").append(playerTwo.getPlayerName()).append(" (")
                 .append(playerTwo.getPlatform()).append(") ~**__\n\n");
-        //Get the lifetime total games played, wins, win%, kills, and kd values
-        tempString.append("__***Lifetime***__\n");
-        tempString.append("**Games Played:** ").append(playerOne.getLifetimeGp("totalLifetime")).append(" | ").append(playerTwo.getLifetimeGp("totalLifetime")).append("\n");
-        tempString.append("**Wins:** ").append(playerOne.getLifetimeWins("totalLifetime")).append(" | ").append(playerTwo.getLifetimeWins("totalLifetime")).append("\n");
-        tempString.append("**Win %:** ").append(playerOne.getLifetimeWp("totalLifetime")).append(" | ").append(playerTwo.getLifetimeWp("totalLifetime")).append("\n");
-        tempString.append("**Kills:** ").append(playerOne.getLifetimeKills("totalLifetime")).append(" | ").append(playerTwo.getLifetimeKills("totalLifetime")).append("\n");
-        tempString.append("**K/D:** ").append(playerOne.getLifetimeKd("totalLifetime")).append(" | ").append(playerTwo.getLifetimeKd("totalLifetime")).append("\n\n");
-        //Get the solo lifetime games played, wins, win%, kills, and kd values
-        tempString.append("__***Overall Solos***__\n");
-        tempString.append("**Games Played:** ").append(playerOne.getLifetimeGp("soloLifetime")).append(" | ").append(playerTwo.getLifetimeGp("soloLifetime")).append("\n");
-        tempString.append("**Wins:** ").append(playerOne.getLifetimeWins("soloLifetime")).append(" | ").append(playerTwo.getLifetimeWins("soloLifetime")).append("\n");
-        tempString.append("**Win %:** ").append(playerOne.getLifetimeWp("soloLifetime")).append(" | ").append(playerTwo.getLifetimeWp("soloLifetime")).append("\n");
-        tempString.append("**Kills:** ").append(playerOne.getLifetimeKills("soloLifetime")).append(" | ").append(playerTwo.getLifetimeKills("soloLifetime")).append("\n");
-        tempString.append("**K/D:** ").append(playerOne.getLifetimeKd("soloLifetime")).append(" | ").append(playerTwo.getLifetimeKd("soloLifetime")).append("\n\n");
-        //Get the duo lifetime games played, wins, win%, kills, and kd values
-        tempString.append("__***Overall Duos***__\n");
-        tempString.append("**Games Played:** ").append(playerOne.getLifetimeGp("duoLifetime")).append(" | ").append(playerTwo.getLifetimeGp("duoLifetime")).append("\n");
-        tempString.append("**Wins:** ").append(playerOne.getLifetimeWins("duoLifetime")).append(" | ").append(playerTwo.getLifetimeWins("duoLifetime")).append("\n");
-        tempString.append("**Win %:** ").append(playerOne.getLifetimeWp("duoLifetime")).append(" | ").append(playerTwo.getLifetimeWp("duoLifetime")).append("\n");
-        tempString.append("**Kills:** ").append(playerOne.getLifetimeKills("duoLifetime")).append(" | ").append(playerTwo.getLifetimeKills("duoLifetime")).append("\n");
-        tempString.append("**K/D:** ").append(playerOne.getLifetimeKd("duoLifetime")).append(" | ").append(playerTwo.getLifetimeKd("duoLifetime")).append("\n\n");
-        //Get the squad lifetime games played, wins, win%, kills, and kd values
-        tempString.append("__***Overall Squads***__\n");
-        tempString.append("**Games Played:** ").append(playerOne.getLifetimeGp("squadLifetime")).append(" | ").append(playerTwo.getLifetimeGp("squadLifetime")).append("\n");
-        tempString.append("**Wins:** ").append(playerOne.getLifetimeWins("squadLifetime")).append(" | ").append(playerTwo.getLifetimeWins("squadLifetime")).append("\n");
-        tempString.append("**Win %:** ").append(playerOne.getLifetimeWp("squadLifetime")).append(" | ").append(playerTwo.getLifetimeWp("squadLifetime")).append("\n");
-        tempString.append("**Kills:** ").append(playerOne.getLifetimeKills("squadLifetime")).append(" | ").append(playerTwo.getLifetimeKills("squadLifetime")).append("\n");
-        tempString.append("**K/D:** ").append(playerOne.getLifetimeKd("squadLifetime")).append(" | ").append(playerTwo.getLifetimeKd("squadLifetime")).append("\n");
-        
-        return tempString.toString();
+        //Get the games played, wins, win%, kills, and kd values of each mode, bolding the better one
+        for(FortnitePlayer.Mode mode : FortnitePlayer.Mode.values()){
+            //Only lifetime stats are compared
+            if(mode.isCurrent())
+                continue;
+            tempString.append("__***").append(mode.getTitle()).append("***__\n");
+            for(FortnitePlayer.Metric metric : FortnitePlayer.Metric.values()){
+                boolean oneBetter = playerOne.beats(playerTwo, mode, metric);
+                tempString.append("**").append(metric.getLabel()).append(":** ")
+                        .append(highlight(playerOne.format(mode, metric), oneBetter)).append(" | ")
+                        .append(highlight(playerTwo.format(mode, metric), !oneBetter)).append("\n");
+            }
+            tempString.append("\n");
+        }
+        return tempString.toString().trim();
     }
     
     /**
-     * getLifeTimeStats - Gets the lifetime statistics from the given playerStats JSONobject
-     * @param playerStats - A JSONObject of the requested players statistics
-     * @return tempString - A String of the wanted lifetime statistics
+     * rankPlayerStats - Ranks the players on every lifetime statistic and creates an
+     * output string with the best few players for each
+     * @param fnPlayers - An ArrayList of the FortnitePlayer objects
+     * @return tempString - A String of the rankings
      */
-    private String getLifeTimeStats(JSONObject playerStats){
-        //Initiate output stringbuilder and header
+    String rankPlayerStats(ArrayList<FortnitePlayer> fnPlayers){
         StringBuilder tempString = new StringBuilder();
-        tempString.append("__***Lifetime***__\n");
-        //Get the lifetime JSONObject
-        JSONArray lifetimeArray = playerStats.getJSONArray("lifeTimeStats");
-        //Get the lifetime games played  value
-        tempString.append("**Games Played:** ").append(lifetimeArray.getJSONObject(7).getString("value")).append("\n");
-        //Get the lifetime wins value
-        tempString.append("**Wins:** ").append(lifetimeArray.getJSONObject(8).getString("value")).append("\n");
-        //Get the lifetime win% value
-        tempString.append("**Win %:** ").append(lifetimeArray.getJSONObject(9).getString("value")).append("\n");
-        //Get the lifetime kills value
-        tempString.append("**Kills:** ").append(lifetimeArray.getJSONObject(10).getString("value")).append("\n");
-        //Get the lifetime kd value
-        tempString.append("**K/D:** ").append(lifetimeArray.getJSONObject(11).getString("value"));
-        return tempString.toString();
+        //Make header
+        tempString.append("__**~ ");
+        for(int i = 0; i < fnPlayers.size(); i++){
+            if(i > 0)
+                tempString.append(" | ");
+            tempString.append(fnPlayers.get(i).getPlayerName()).append(" (").append(fnPlayers.get(i).getPlatform()).append(")");
+        }
+        tempString.append(" ~**__\n\n");
+        //List the best players for each mode and stat
+        for(FortnitePlayer.Mode mode : FortnitePlayer.Mode.values()){
+            //Only lifetime stats are compared
+            if(mode.isCurrent())
+                continue;
+            tempString.append("__***").append(mode.getTitle()).append("***__\n");
+            for(FortnitePlayer.Metric metric : FortnitePlayer.Metric.values()){
+                tempString.append("**").append(metric.getLabel()).append(":** ");
+                int[] best = FortnitePlayer.topK(fnPlayers, mode, metric, TOP_RANKS);
+                for(int rank = 0; rank < best.length; rank++){
+                    FortnitePlayer player = fnPlayers.get(best[rank]);
+                    if(rank > 0)
+                        tempString.append(", ");
+                    tempString.append(rank + 1).append(". ").append(highlight(player.getPlayerName(), rank == 0))
+                            .append(" (").append(player.format(mode, metric)).append(")");
+                }
+                tempString.append("\n");
+            }
+            tempString.append("\n");
+        }
+        return tempString.toString().trim();
     }
     
     /**
-     * getGameModeStats - Gets the statistics for the given gameMode&season from the given playerStats JSONobject
-     * @param playerStats - A JSONObject of the requested players statistics
-     * @param gameMode - A string of the game mode to get statistics for
+     * highlight - Bolds the given stat if it is the better one
+     * @param stat - the formatted stat
+     * @param better - true if the stat should be bolded
+     * @return String - the stat, bolded if it is better
+     */
+    private static String highlight(String stat, boolean better){
+        return better ? "**" + stat + "**" : stat;
+    }
+    
+    /**
+     * getGameModeStats - Gets the statistics for the given game mode of the player
+     * @param player - the requested players statistics
+     * @param mode - the game mode to get statistics for
      * @return tempString - A String of the needed statistics 
      */
-    private String getGameModeStats(JSONObject playerStats, String gameMode){
-        //Initiate output stringbuilder
-        StringBuilder tempString = new StringBuilder();
-        tempString.append("__***").append(MODE_MAP.get(gameMode)).append("***__\n");
-        //Get the mode requesteds JSONObject
-        if(!playerStats.getJSONObject("stats").has(gameMode)){
+    String getGameModeStats(FortnitePlayer player, FortnitePlayer.Mode mode){
+        //Initiate output stringbuilder sized for every stat
+        StringBuilder tempString = new StringBuilder(32 + STAT_LINE.estimate() * FortnitePlayer.Metric.values().length);
+        tempString.append("__***").append(mode.getTitle()).append("***__\n");
+        if(!player.hasPlayed(mode)){
             tempString.append("No stats for this playlist. Play some matches first!");
             return tempString.toString();
         }
-        JSONObject mode = playerStats.getJSONObject("stats").getJSONObject(gameMode);
-        //Get the overall gameMode games played value
-        tempString.append("**Games Played:** ").append(mode.getJSONObject("matches").getString("displayValue")).append("\n");
-        //Get the overall gameMode wins value
-        tempString.append("**Wins:** ").append(mode.getJSONObject("top1").getString("displayValue")).append("\n");
-        //Get the overall gameMode win% value
-        tempString.append("**Win %:** ").append(mode.getJSONObject("winRatio").getString("displayValue")).append("%\n");
-        //Get the overall gameMode kills value
-        tempString.append("**Kills:** ").append(mode.getJSONObject("kills").getString("displayValue")).append("\n");
-        //Get the overall gameMode kd value
-        tempString.append("**K/D:** ").append(mode.getJSONObject("kd").getString("displayValue"));
-        return tempString.toString();
+        //Get the games played, wins, win%, kills, and kd values
+        for(FortnitePlayer.Metric metric : FortnitePlayer.Metric.values())
+            STAT_LINE.renderTo(tempString, metric.getLabel(), player.format(mode, metric));
+        return tempString.toString().trim();
     }
     
-        /**
-     * getCurrentTotalStats - Gets the total statistics for the current season from the given playerStats JSONobject
-     * @param playerStats - A JSONObject of the requested players statistics
+    /**
+     * getCurrentTotalStats - Gets the total statistics for the current season of the player
+     * @param player - the requested players statistics
      * @return tempString - A String of the needed statistics 
      */
-    private String getCurrentTotalStats(JSONObject playerStats){
+    String getCurrentTotalStats(FortnitePlayer player){
         //Initiate counters
-        int gamesPlayed = 0;
-        int totalWins = 0;
-        int totalKills = 0;
+        long gamesPlayed = 0;
+        long totalWins = 0;
+        long totalKills = 0;
         double killDeath;
-        //Initiate json
-        JSONObject mode;
-        //Mode names for for each
-        List<String> modeList = Arrays.asList("curr_p2", "curr_p10", "curr_p9");
         //Initiate output stringbuilder
         StringBuilder tempString = new StringBuilder();
         tempString.append("__***Current Season Totals***__\n");
-        //For each to grab wanted stats from each game mode
-        for(String modeName : modeList){
-            if(playerStats.getJSONObject("stats").has(modeName)){
-                mode = playerStats.getJSONObject("stats").getJSONObject(modeName);
-                gamesPlayed += mode.getJSONObject("matches").getInt("valueInt");
-                totalWins += mode.getJSONObject("top1").getInt("valueInt");
-                totalKills += mode.getJSONObject("kills").getInt("valueInt");
+        //Add up the wanted stats from each current season game mode
+        for(FortnitePlayer.Mode mode : FortnitePlayer.Mode.values()){
+            if(mode.isCurrent()){
+                gamesPlayed += (long)player.get(mode, FortnitePlayer.Metric.GAMES_PLAYED);
+                totalWins += (long)player.get(mode, FortnitePlayer.Metric.WINS);
+                totalKills += (long)player.get(mode, FortnitePlayer.Metric.KILLS);
             }
         }
         //Format output
@@ -451,36 +478,19 @@ public class FortniteListener extends ListenerAdapter {
         return tempString.toString();
     }
     
-    /**
-     * createRegionMap - Creates an HashMap with keys being the Fortnite tracker
-     * API game mode keys and values being user friendly mode names.
-     * @return regionMap - HashMap of API game modes to user friendly game mode names
-     */
-    private static Map<String, String> createModeMap(){
-        Map<String, String> modeMap = new HashMap<>();
-        modeMap.put("p2", "Overall Solos");
-        modeMap.put("p10", "Overall Duos");
-        modeMap.put("p9", "Overall Squads");
-        modeMap.put("curr_p2", "Current Season Solos");
-        modeMap.put("curr_p10", "Current Season Duos");
-        modeMap.put("curr_p9", "Current Season Squads");
-        return modeMap;
-    }
-    
     /**
      * getFavePlatform - Finds the platform the player has the most played games on
-     * @param platformJsons - an ArrayList of JSONObjects to search through
-     * @return favePlatform - the JSONObject of the platform the user has played the most games on
+     * @param platformPlayers - an ArrayList of the players stats on each platform
+     * @return favePlatform - the stats of the platform the user has played the most games on
      */
-    private static JSONObject getFavePlatform(ArrayList<JSONObject> platformJsons){
-        int tempMost = 0;
-        int tempPlayed;
-        JSONObject favePlatform = platformJsons.get(0);
-        //Loop through each object
-        for(JSONObject platform : platformJsons){
+    private static FortnitePlayer getFavePlatform(ArrayList<FortnitePlayer> platformPlayers){
+        float tempMost = 0;
+        float tempPlayed;
+        FortnitePlayer favePlatform = platformPlayers.get(0);
+        //Loop through each platform
+        for(FortnitePlayer platform : platformPlayers){
             //Get amount of matches played
-            JSONArray lifetimeArray = platform.getJSONArray("lifeTimeStats");
-            tempPlayed = Integer.parseInt(lifetimeArray.getJSONObject(7).getString("value"));
+            tempPlayed = platform.get(FortnitePlayer.Mode.LIFETIME, FortnitePlayer.Metric.GAMES_PLAYED);
             //If more played on latest platform, change fave platform and games played
             if(tempPlayed > tempMost){
                 tempMost = tempPlayed;
@@ -491,22 +501,24 @@ public class FortniteListener extends ListenerAdapter {
     }
     
     /**
-     * getAllJsons - Gets a JSONs for each platform the player has played on
+     * getAllPlatforms - Gets the players stats for each platform they have played on
      * @param epicName - epic games name
-     * @return jsonArray - ArrayList of JSONs
+     * @param guildKey - key of the guild the requests are for
+     * @return platformPlayers - ArrayList of the players stats on each platform
      */
-    private ArrayList<JSONObject> getAllJsons(String epicName) throws ProtocolException, IOException{
-        //Array for the players jsons
-        ArrayList<JSONObject> jsonArray = new ArrayList<>();
-        JSONObject playerJson;
-        //Get JSON for each platform the user has played on
-        for(String platform : platformList){
-            playerJson = makeRequest(platform, epicName);
-            if(!playerJson.has("error"))
-                jsonArray.add(playerJson);
+    private ArrayList<FortnitePlayer> getAllPlatforms(String epicName, String guildKey) throws IOException{
+        ArrayList<FortnitePlayer> platformPlayers = new ArrayList<>();
+        //Request the player on every platform at once
+        List<String[]> requests = new ArrayList<>();
+        for(String platform : platformList)
+            requests.add(new String[]{platform, epicName});
+        //Keep each platform the user has played on
+        for(FortnitePlayer player : makeRequests(requests, guildKey)){
+            if(player != null)
+                platformPlayers.add(player);
         }
         
-        return jsonArray;
+        return platformPlayers;
     }
     
     /**
@@ -518,14 +530,14 @@ public class FortniteListener extends ListenerAdapter {
         StringBuilder invalidName = new StringBuilder();
         invalidName.append("Invalid player name! **").append(epicName)
                 .append("** could not be found");
-        event.getChannel().sendMessage(invalidName.toString()).queue(); 
+        Replies.send(event.getChannel(), invalidName.toString()); 
     }
     
-    private String playerHeader(JSONObject playerJson){
+    private String playerHeader(FortnitePlayer player){
         StringBuilder header = new StringBuilder();
         //Format the players header
-        header.append("__**~ ").append(playerJson.getString("epicUserHandle"))
-                .append(" (").append(playerJson.getString("platformName").toUpperCase())
+        header.append("__**~ ").append(player.getPlayerName())
+                .append(" (").append(player.getPlatform())
                 .append(") ~**__\n\n");
         return header.toString();
     }
@@ -1,138 +1,200 @@
 package gamebot;
 
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
 
 /**
+ * Purpose: Holds a Fortnite players lifetime and current season statistics. The
+ * stats are parsed once when the player is built and kept as primitives indexed
+ * by game mode and metric, so comparing players does not parse or change them
+ * and the same player can be compared any number of times.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * METRICS              Number of metrics kept for each mode
+ * WHOLE_FORMAT         ThreadLocal DecimalFormat of whole number stats, like 3,000
+ * DECIMAL_FORMAT       ThreadLocal DecimalFormat of decimal stats without trailing zeros, like 2.59 or 10
+ *
+ * private final
+ *
+ * name                 Epic games name of the player
+ * platform             Platform the player plays on
+ * stats                float array of every stat, indexed by mode then metric
+ * played               boolean array of which modes the player has stats for
  *
- * @author colin
  */
 public class FortnitePlayer {
+    /**
+     * Purpose: The game modes stats are kept for, along with their FortniteTracker
+     * API keys. Lifetime totals have no key since they come from lifeTimeStats.
+     */
+    public enum Mode {
+        LIFETIME(null, "Lifetime", false),
+        SOLO("p2", "Overall Solos", false),
+        DUO("p10", "Overall Duos", false),
+        SQUAD("p9", "Overall Squads", false),
+        CURRENT_SOLO("curr_p2", "Current Season Solos", true),
+        CURRENT_DUO("curr_p10", "Current Season Duos", true),
+        CURRENT_SQUAD("curr_p9", "Current Season Squads", true);
+
+        private final String apiKey;
+        private final String title;
+        private final boolean current;
+
+        Mode(String apiKey, String title, boolean current){
+            this.apiKey = apiKey;
+            this.title = title;
+            this.current = current;
+        }
+
+        public String getTitle(){
+            return title;
+        }
+
+        public boolean isCurrent(){
+            return current;
+        }
+
+        /**
+         * fromApiKey - Gets the mode with the given FortniteTracker API key
+         * @param apiKey - the API key of the mode
+         * @return Mode - the mode, null if it is not one that is kept
+         */
+        public static Mode fromApiKey(String apiKey){
+            for(Mode mode : values()){
+                if(apiKey.equals(mode.apiKey))
+                    return mode;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Purpose: The stats kept for each game mode
+     */
+    public enum Metric {
+        GAMES_PLAYED("Games Played", false),
+        WINS("Wins", false),
+        WIN_PERCENT("Win %", true),
+        KILLS("Kills", false),
+        KD("K/D", true);
+
+        private final String label;
+        private final boolean decimal;
+
+        Metric(String label, boolean decimal){
+            this.label = label;
+            this.decimal = decimal;
+        }
+
+        public String getLabel(){
+            return label;
+        }
+    }
+
+    private static final int METRICS = Metric.values().length;
+    //Formatted the way FortniteTracker displays stats, whatever the locale of the host
+    private static final ThreadLocal<DecimalFormat> WHOLE_FORMAT = ThreadLocal.withInitial(
+            () -> new DecimalFormat("#,##0", DecimalFormatSymbols.getInstance(Locale.ROOT)));
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = ThreadLocal.withInitial(
+            () -> new DecimalFormat("#,##0.##", DecimalFormatSymbols.getInstance(Locale.ROOT)));
     private final String name;
     private final String platform;
-    
-    private String lifetimeGp = "0";
-    private String lifetimeWins = "0";
-    private String lifetimeWp = "0";
-    private String lifetimeKills = "0";
-    private String lifetimeKd = "0";
-    
-    private String soloLifetimeGp = "0";
-    private String soloLifetimeWins = "0";
-    private String soloLifetimeWp = "0";
-    private String soloLifetimeKills = "0";
-    private String soloLifetimeKd = "0";
-    
-    private String duoLifetimeGp = "0";
-    private String duoLifetimeWins = "0";
-    private String duoLifetimeWp = "0";
-    private String duoLifetimeKills = "0";
-    private String duoLifetimeKd = "0";
-    
-    private String squadLifetimeGp = "0";
-    private String squadLifetimeWins = "0";
-    private String squadLifetimeWp = "0";
-    private String squadLifetimeKills = "0";
-    private String squadLifetimeKd = "0";
-    private final String Md = "**";
-    
+    private final float[] stats = new float[Mode.values().length * METRICS];
+    private final boolean[] played = new boolean[Mode.values().length];
+
     public FortnitePlayer(String nm, String pForm){
         name = nm;
         platform = pForm;
     }
-    //Lifetime setters
-    //Games Played
-    public void setLifetimeGp(String gamesPlayed, String category){
-        gamesPlayed = gamesPlayed.replace(",", "");
-        switch(category){
-            case "totalLifetime":
-                lifetimeGp = gamesPlayed;
-                break;
-            case "soloLifetime":
-                soloLifetimeGp = gamesPlayed;
-                break;
-            case "duoLifetime":
-                duoLifetimeGp = gamesPlayed;
-                break;
-            default:
-                squadLifetimeGp = gamesPlayed;
-                
-        }
+
+    /**
+     * set - Parses and sets a stat from the value given by the API
+     * @param mode - game mode of the stat
+     * @param metric - which stat to set
+     * @param value - the stat as given by the API, commas and percent signs are ignored
+     */
+    public void set(Mode mode, Metric metric, String value){
+        stats[index(mode, metric)] = parse(value);
+        played[mode.ordinal()] = true;
     }
-    //Wins
-    public void setLifetimeWins(String gamesWon, String category){
-        gamesWon = gamesWon.replace(",", "");
-        switch(category){
-            case "totalLifetime":
-                lifetimeWins = gamesWon;
-                break;
-            case "soloLifetime":
-                soloLifetimeWins = gamesWon;
-                break;
-            case "duoLifetime":
-                duoLifetimeWins = gamesWon;
-                break;
-            default:
-                squadLifetimeWins = gamesWon;
-                
-        }
+
+    /**
+     * hasPlayed - Checks if the player has any stats for a mode
+     * @param mode - the game mode
+     * @return Boolean - true if a stat was set for the mode
+     */
+    public boolean hasPlayed(Mode mode){
+        return played[mode.ordinal()];
     }
-    //Win Percent
-    public void setLifetimeWp(String winPercent, String category){
-        switch(category){
-            case "totalLifetime":
-                lifetimeWp = winPercent;
-                break;
-            case "soloLifetime":
-                soloLifetimeWp = winPercent;
-                break;
-            case "duoLifetime":
-                duoLifetimeWp = winPercent;
-                break;
-            default:
-                squadLifetimeWp = winPercent;
-                
-        }
+
+    /**
+     * get - Gets a stat
+     * @param mode - game mode of the stat
+     * @param metric - which stat to get
+     * @return float - the stat, 0 if the player has none
+     */
+    public float get(Mode mode, Metric metric){
+        return stats[index(mode, metric)];
     }
-    //Kills
-    public void setLifetimeKills(String kills, String category){
-        kills = kills.replace(",", "");
-        switch(category){
-            case "totalLifetime":
-                lifetimeKills = kills;
-                break;
-            case "soloLifetime":
-                soloLifetimeKills = kills;
-                break;
-            case "duoLifetime":
-                duoLifetimeKills = kills;
-                break;
-            default:
-                squadLifetimeKills = kills;
-                
-        }
+
+    /**
+     * format - Gets a stat formatted for output
+     * @param mode - game mode of the stat
+     * @param metric - which stat to format
+     * @return String - the formatted stat
+     */
+    public String format(Mode mode, Metric metric){
+        float value = get(mode, metric);
+        String formatted = (metric.decimal ? DECIMAL_FORMAT : WHOLE_FORMAT).get().format(value);
+        return metric == Metric.WIN_PERCENT ? formatted + "%" : formatted;
+    }
+
+    /**
+     * beats - Checks if this players stat is higher than another players
+     * @param otherPlayer - the player to compare against
+     * @param mode - game mode of the stat
+     * @param metric - which stat to compare
+     * @return Boolean - true if this players stat is higher
+     */
+    public boolean beats(FortnitePlayer otherPlayer, Mode mode, Metric metric){
+        return get(mode, metric) > otherPlayer.get(mode, metric);
     }
-    //Kill death ratio
-    public void setLifetimeKd(String killDeath, String category){
-        switch(category){
-            case "totalLifetime":
-                lifetimeKd = killDeath;
-                break;
-            case "soloLifetime":
-                soloLifetimeKd = killDeath;
-                break;
-            case "duoLifetime":
-                duoLifetimeKd = killDeath;
-                break;
-            default:
-                squadLifetimeKd = killDeath;
-                
+
+    /**
+     * topK - Ranks the players on one stat in a single pass, keeping only the best k
+     * @param players - the players to rank
+     * @param mode - game mode of the stat
+     * @param metric - which stat to rank on
+     * @param k - how many of the best players to keep
+     * @return int[] - indexes of the best players in the list, highest stat first
+     */
+    public static int[] topK(List<FortnitePlayer> players, Mode mode, Metric metric, int k){
+        int size = Math.min(k, players.size());
+        int[] best = new int[size];
+        int filled = 0;
+        for(int i = 0; i < players.size(); i++){
+            float value = players.get(i).get(mode, metric);
+            //Skip players that do not make the current top k
+            if(filled == size && value <= players.get(best[size - 1]).get(mode, metric))
+                continue;
+            //Shift lower players down to make room, earlier players win ties
+            int slot = filled < size ? filled++ : size - 1;
+            while(slot > 0 && value > players.get(best[slot - 1]).get(mode, metric)){
+                best[slot] = best[slot - 1];
+                slot--;
+            }
+            best[slot] = i;
         }
+        return best;
     }
-    //Lifetime getters
+
     //Name
     public String getPlayerName(){
         return name;
@@ -141,123 +203,34 @@ public class FortnitePlayer {
     public String getPlatform(){
         return platform;
     }
-    //Games played
-    public String getLifetimeGp(String category){
-        switch(category){
-            case "totalLifetime":
-                return lifetimeGp;
-            case "soloLifetime":
-                return soloLifetimeGp;
-            case "duoLifetime":
-                return duoLifetimeGp;
-            default:
-                return squadLifetimeGp;    
-        }
-    }
-    //Wins
-    public String getLifetimeWins(String category){
-        switch(category){
-            case "totalLifetime":
-                return lifetimeWins;
-            case "soloLifetime":
-                return soloLifetimeWins;
-            case "duoLifetime":
-                return duoLifetimeWins;
-            default:
-                return squadLifetimeWins;      
-        }
+
+    /**
+     * index - Gets where a stat is kept in the stats array
+     * @param mode - game mode of the stat
+     * @param metric - which stat
+     * @return int - index of the stat
+     */
+    private static int index(Mode mode, Metric metric){
+        return mode.ordinal() * METRICS + metric.ordinal();
     }
-    //Win Percent
-    public String getLifetimeWp(String category){
-        switch(category){
-            case "totalLifetime":
-                return lifetimeWp;
-            case "soloLifetime":
-                return soloLifetimeWp;
-            case "duoLifetime":
-                return duoLifetimeWp;
-            default:
-                return squadLifetimeWp;      
+
+    /**
+     * parse - Turns a stat given by the API into a number
+     * @param value - the stat, possibly with commas or a percent sign
+     * @return float - the stat, 0 if it is not a number
+     */
+    private static float parse(String value){
+        StringBuilder digits = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c != ',' && c != '%')
+                digits.append(c);
         }
-    }
-    //Kills
-    public String getLifetimeKills(String category){
-        switch(category){
-            case "totalLifetime":
-                return lifetimeKills;
-            case "soloLifetime":
-                return soloLifetimeKills;
-            case "duoLifetime":
-                return duoLifetimeKills;
-            default:
-                return squadLifetimeKills;      
+        try{
+            return Float.parseFloat(digits.toString().trim());
         }
-    }
-    //Kill death
-    public String getLifetimeKd(String category){
-        switch(category){
-            case "totalLifetime":
-                return lifetimeKd;
-            case "soloLifetime":
-                return soloLifetimeKd;
-            case "duoLifetime":
-                return duoLifetimeKd;
-            default:
-                return squadLifetimeKd;      
+        catch(NumberFormatException ex){
+            return 0;
         }
     }
-    //Comparers
-    //Games Played
-    public void compareLifetimeGp(FortnitePlayer otherPlayer, String category){
-        String otherGp = otherPlayer.getLifetimeGp(category);
-        String thisGp = this.getLifetimeGp(category);
-        if(Integer.parseInt(thisGp) > Integer.parseInt(otherGp))
-            this.setLifetimeGp(Md + thisGp + Md, category);
-        else
-            otherPlayer.setLifetimeGp(Md + otherGp + Md, category);
-    }
-    
-    public void compareLifetimeWins(FortnitePlayer otherPlayer, String category){
-        String otherWins = otherPlayer.getLifetimeWins(category);
-        String thisWins = this.getLifetimeWins(category);
-        if(Integer.parseInt(thisWins) > Integer.parseInt(otherWins))
-            this.setLifetimeWins(Md + thisWins + Md, category);
-        else
-            otherPlayer.setLifetimeWins(Md + otherWins + Md, category);
-    }
-    
-    public void compareLifetimeWp(FortnitePlayer otherPlayer, String category){
-        String otherWp = otherPlayer.getLifetimeWp(category);
-        String thisWp = this.getLifetimeWp(category);
-        if(Float.parseFloat(thisWp.replace("%", "")) > Float.parseFloat(otherWp.replace("%", "")))
-            this.setLifetimeWp(Md + thisWp + Md, category);
-        else
-            otherPlayer.setLifetimeWp(Md + otherWp + Md, category);
-    }
-    
-    public void compareLifetimeKills(FortnitePlayer otherPlayer, String category){
-        String otherKills = otherPlayer.getLifetimeKills(category);
-        String thisKills = this.getLifetimeKills(category);
-        if(Integer.parseInt(thisKills) > Integer.parseInt(otherKills))
-            this.setLifetimeKills(Md + thisKills + Md, category);
-        else
-            otherPlayer.setLifetimeKills(Md + otherKills + Md, category);
-    }
-    
-    public void compareLifetimeKd(FortnitePlayer otherPlayer, String category){
-        String otherKd = otherPlayer.getLifetimeKd(category);
-        String thisKd = this.getLifetimeKd(category);
-        if(Float.parseFloat(thisKd) > Float.parseFloat(otherKd))
-            this.setLifetimeKd(Md + thisKd + Md, category);
-        else
-            otherPlayer.setLifetimeKd(Md + otherKd + Md, category);
-    }
-    
-    public void compareAllLifetime(FortnitePlayer otherPlayer, String category){
-        this.compareLifetimeGp(otherPlayer, category);
-        this.compareLifetimeWins(otherPlayer, category);
-        this.compareLifetimeWp(otherPlayer, category);
-        this.compareLifetimeKills(otherPlayer, category);
-        this.compareLifetimeKd(otherPlayer, category);
-    }
 }
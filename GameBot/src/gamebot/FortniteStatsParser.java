@@ -0,0 +1,179 @@
+package gamebot;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * Purpose: Reads a FortniteTracker profile response straight into a FortnitePlayer
+ * with a streaming parser. Only the fields the bot shows are read, everything
+ * else in the response, like the match history, is skipped without being built.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * FACTORY              JsonFactory the parsers are made from
+ * LIFETIME_METRICS     Metrics kept from lifeTimeStats, indexed by their position in the array
+ *
+ */
+public class FortniteStatsParser {
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final FortnitePlayer.Metric[] LIFETIME_METRICS = new FortnitePlayer.Metric[12];
+
+    static{
+        LIFETIME_METRICS[7] = FortnitePlayer.Metric.GAMES_PLAYED;
+        LIFETIME_METRICS[8] = FortnitePlayer.Metric.WINS;
+        LIFETIME_METRICS[9] = FortnitePlayer.Metric.WIN_PERCENT;
+        LIFETIME_METRICS[10] = FortnitePlayer.Metric.KILLS;
+        LIFETIME_METRICS[11] = FortnitePlayer.Metric.KD;
+    }
+
+    /**
+     * parse - BodyParser for a FortniteTracker profile
+     * @param body - the response body
+     * @param length - number of bytes in the body
+     * @return FortnitePlayer - the players stats, null if the API could not find the player
+     */
+    public static FortnitePlayer parse(byte[] body, int length) throws IOException{
+        String name = null;
+        String platform = null;
+        FortnitePlayer.Mode[] modes = FortnitePlayer.Mode.values();
+        String[][] values = new String[modes.length][FortnitePlayer.Metric.values().length];
+        try(JsonParser parser = FACTORY.createParser(body, 0, length)){
+            if(parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("Expected a profile object");
+            while(parser.nextToken() == JsonToken.FIELD_NAME){
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch(field){
+                    case "error":
+                        return null;
+                    case "epicUserHandle":
+                        name = parser.getValueAsString();
+                        break;
+                    case "platformName":
+                        platform = parser.getValueAsString();
+                        break;
+                    case "lifeTimeStats":
+                        readLifetime(parser, values[FortnitePlayer.Mode.LIFETIME.ordinal()]);
+                        break;
+                    case "stats":
+                        readModes(parser, values);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        if(name == null || platform == null)
+            throw new IOException("Profile is missing the players name or platform");
+        //Values are held until the end since the name can come after the stats
+        FortnitePlayer player = new FortnitePlayer(name, platform.toUpperCase());
+        for(FortnitePlayer.Mode mode : modes){
+            for(FortnitePlayer.Metric metric : FortnitePlayer.Metric.values()){
+                String value = values[mode.ordinal()][metric.ordinal()];
+                if(value != null)
+                    player.set(mode, metric, value);
+            }
+        }
+        return player;
+    }
+
+    /**
+     * readLifetime - Reads the wanted values of the lifeTimeStats array
+     * @param parser - parser positioned on the start of the array
+     * @param values - the lifetime values, indexed by metric
+     */
+    private static void readLifetime(JsonParser parser, String[] values) throws IOException{
+        if(parser.getCurrentToken() != JsonToken.START_ARRAY){
+            parser.skipChildren();
+            return;
+        }
+        int index = 0;
+        while(parser.nextToken() == JsonToken.START_OBJECT){
+            FortnitePlayer.Metric metric = index < LIFETIME_METRICS.length ? LIFETIME_METRICS[index] : null;
+            while(parser.nextToken() == JsonToken.FIELD_NAME){
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if(metric != null && field.equals("value"))
+                    values[metric.ordinal()] = parser.getValueAsString();
+                else
+                    parser.skipChildren();
+            }
+            index++;
+        }
+    }
+
+    /**
+     * readModes - Reads the wanted display values of each game mode in the stats object
+     * @param parser - parser positioned on the start of the stats object
+     * @param values - the values of every mode, indexed by mode then metric
+     */
+    private static void readModes(JsonParser parser, String[][] values) throws IOException{
+        if(parser.getCurrentToken() != JsonToken.START_OBJECT){
+            parser.skipChildren();
+            return;
+        }
+        while(parser.nextToken() == JsonToken.FIELD_NAME){
+            FortnitePlayer.Mode mode = FortnitePlayer.Mode.fromApiKey(parser.getCurrentName());
+            parser.nextToken();
+            if(mode == null || parser.getCurrentToken() != JsonToken.START_OBJECT){
+                parser.skipChildren();
+                continue;
+            }
+            while(parser.nextToken() == JsonToken.FIELD_NAME){
+                FortnitePlayer.Metric metric = metricOf(parser.getCurrentName());
+                parser.nextToken();
+                if(metric == null || parser.getCurrentToken() != JsonToken.START_OBJECT){
+                    parser.skipChildren();
+                    continue;
+                }
+                values[mode.ordinal()][metric.ordinal()] = readDisplayValue(parser);
+            }
+        }
+    }
+
+    /**
+     * readDisplayValue - Reads the displayValue of a stat object
+     * @param parser - parser positioned on the start of the stat object
+     * @return String - the display value, null if there is none
+     */
+    private static String readDisplayValue(JsonParser parser) throws IOException{
+        String displayValue = null;
+        while(parser.nextToken() == JsonToken.FIELD_NAME){
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if(field.equals("displayValue"))
+                displayValue = parser.getValueAsString();
+            else
+                parser.skipChildren();
+        }
+        return displayValue;
+    }
+
+    /**
+     * metricOf - Gets the metric a game mode stat is kept as
+     * @param field - the name of the stat in the API
+     * @return Metric - the metric, null if the stat is not kept
+     */
+    private static FortnitePlayer.Metric metricOf(String field){
+        switch(field){
+            case "matches":
+                return FortnitePlayer.Metric.GAMES_PLAYED;
+            case "top1":
+                return FortnitePlayer.Metric.WINS;
+            case "winRatio":
+                return FortnitePlayer.Metric.WIN_PERCENT;
+            case "kills":
+                return FortnitePlayer.Metric.KILLS;
+            case "kd":
+                return FortnitePlayer.Metric.KD;
+            default:
+                return null;
+        }
+    }
+}
@@ -4,7 +4,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.security.auth.login.LoginException;
@@ -36,14 +41,56 @@ public class GameBot {
         try{
             InputStream input = new FileInputStream("src/props/gamebot-config.properties");
             config.load(input);
-            //Start the bot, set it to my bots token, attach wanted listeners.
+            //Serve the metrics locally for a scraper, a port of 0 turns it off
+            int metricsPort = Integer.parseInt(config.getProperty("metricsPort", "9100"));
+            if(metricsPort > 0){
+                try{
+                    Metrics.startServer(config.getProperty("metricsHost", "127.0.0.1"), metricsPort);
+                }
+                catch(IOException ex){
+                    Logger.getLogger(GameBot.class.getName()).log(Level.WARNING, "Metrics endpoint not started", ex);
+                }
+            }
+            //Configure Orianna once, reloading it when its config changes
+            LeagueListener.setUpOrianna();
+            LeagueListener.watchOriannaConfig();
+            //Load League static data while the bot logs in instead of on the first command
+            CompletableFuture<Void> warmUp = LeagueListener.warmUpStaticData();
+            //Route every command through one dispatcher, ran off of the event thread
+            CommandExecutor executor = new CommandExecutor(Integer.parseInt(config.getProperty("commandThreads", "8")),
+                    Integer.parseInt(config.getProperty("commandQueueSize", "100")));
+            CommandDispatcher dispatcher = new CommandDispatcher(config.getProperty("prefix"), executor);
+            //Make sure the tables are ready before counting command uses
+            try{
+                DatabaseOps.initSchema();
+            }
+            catch(SQLException ex){
+                Logger.getLogger(GameBot.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            //Count command uses in memory and write them in batches, writing the rest on shutdown
+            DatabaseOps dbOps = new DatabaseOps();
+            UsageTracker usage = new UsageTracker(dbOps, Long.parseLong(config.getProperty("usageFlushSeconds", "30")),
+                    Integer.parseInt(config.getProperty("usageFlushEvents", "100")));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                usage.shutdown();
+                DatabaseOps.shutdown();
+            }, "usage-shutdown"));
+            new MyListener(usage, dbOps).registerCommands(dispatcher);
+            new LeagueListener(usage).registerCommands(dispatcher);
+            new FortniteListener(usage).registerCommands(dispatcher);
+            new OsuListener().registerCommands(dispatcher);
+            //Start the bot, set it to my bots token, attach the dispatcher.
             JDA api = new JDABuilder(AccountType.BOT)
                     .setToken(config.getProperty("botToken"))
-                    .addEventListener(new MyListener())
-                    .addEventListener(new LeagueListener())
-                    .addEventListener(new FortniteListener())
-                    .addEventListener(new OsuListener())
+                    .addEventListener(dispatcher)
                     .buildBlocking();
+            //Wait for the warm up before saying the bot is online, carrying on without it if it takes too long
+            try{
+                warmUp.get(Long.parseLong(config.getProperty("riotWarmupTimeoutSeconds", "60")), TimeUnit.SECONDS);
+            }
+            catch(ExecutionException | TimeoutException ex){
+                Logger.getLogger(GameBot.class.getName()).log(Level.WARNING, "Starting without warm static data", ex);
+            }
             System.out.println("I'm Online!\nI'm Online!");
         }
         catch (LoginException | InterruptedException e){
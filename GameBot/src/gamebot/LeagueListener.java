@@ -4,6 +4,7 @@ import com.merakianalytics.orianna.Orianna;
 import com.merakianalytics.orianna.types.common.Queue;
 import com.merakianalytics.orianna.types.common.Region;
 import com.merakianalytics.orianna.types.common.Season;
+import com.merakianalytics.orianna.types.common.Tier;
 import com.merakianalytics.orianna.types.core.championmastery.ChampionMasteries;
 import com.merakianalytics.orianna.types.core.championmastery.ChampionMastery;
 import com.merakianalytics.orianna.types.core.league.LeaguePosition;
@@ -13,24 +14,37 @@ import com.merakianalytics.orianna.types.core.spectator.CurrentMatchTeam;
 import com.merakianalytics.orianna.types.core.spectator.Player;
 import com.merakianalytics.orianna.types.core.summoner.Summoner;
 import java.io.File;
-import java.sql.SQLException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.core.hooks.ListenerAdapter;
-import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 
 
 /**
- *Purpose: This class implements a ListenerAdapter for a discord bot. It checks
- * for all the League of Legends related commands. The listener outputs data from
+ *Purpose: This class implements a CommandHandler for a discord bot. It handles
+ * all the League of Legends related commands. The listener outputs data from
  * the official League of Legends API through the use of the Orianna library.
  * 
  * @author Colin Keys
@@ -45,13 +59,23 @@ import org.joda.time.Interval;
  * TIER_MAP                 HashMap - keys are the API format of tiers, values are the readable format of tiers
  * TEAM_MAP                 HashMap - keys are the API format of teams, values are the readable format of teams
  * DIVISION_MAP             ashMap - keys are the API format of divisions, values are the integer format of divisions
+ * LOOKUP_TIMEOUT           Seconds to wait on the per player lookups of a live game
+ * HELP_TEXT                Reply to !lolHelp
+ * REGION_OPTIONS           List of the available regions and their abbreviations
+ * RANK_LINE                Template of one league a summoner is ranked in
+ * MASTERY_LINE             Template of one of a summoners top champions
+ * LIVE_HEADER              Template of the summary of a live game
+ * 
+ * private static volatile
+ * 
+ * staticDataReady          True once the static data has been loaded at startup
  * 
  * private
  * 
- * dbOps                    DataboseOps object for database operations
+ * usage                    UsageTracker to count command uses
  * 
  */
-public class LeagueListener extends ListenerAdapter{
+public class LeagueListener implements CommandHandler{
     
     private static final Map<String, String> REGION_MAP = createRegionMap();
     private static final Map<String, String> REGIONABB_MAP = createRegionAbbMap();
@@ -59,149 +83,157 @@ public class LeagueListener extends ListenerAdapter{
     private static final Map<String, String> TIER_MAP = createTierMap();
     private static final Map<String, String> TEAM_MAP = createTeamMap();
     private static final Map<String, String> DIVISION_MAP = createDivisionMap();
-    private final DatabaseOps dbOps = new DatabaseOps();
+    private static final int LOOKUP_TIMEOUT = Integer.parseInt(GameBot.config.getProperty("riotLookupTimeout", "10"));
+    private static final String HELP_TEXT = "__**League of Legends Commands**__\n"
+            + "**!lol <summoner_name>:** Outputs info about given ***summoner_name*** in NA\n"
+            + "**!lolRegion <region> <summoner_name>:** Outputs info about given ***summoner_name*** in given ***region***\n"
+            + "**!lolRanks <summoner_name>:** Outputs given ***summoner_name***'s rank in each queue they are ranked in on the NA server\n"
+            + "**!lolRanksRegion <region> <summoner_name>:** Outputs given ***summoner_name***'s rank in each queue they are ranked in on the given ***region***\n"
+            + "**!lolLive <summoner_name>:** Outputs info about given ***summoner_name***'s live game\n"
+            + "**!lolLiveRegion <region> <summoner_name>:** Outputs info about given ***summoner_name***'s live game on the given ***region***\n";
+    private static final String REGION_OPTIONS = "__**Region Options**__\n" + "**NA** - North America\n"
+            + "**EUNE** - Europe Nordic & East\n" + "**EUW** - Europe West\n"
+            + "**BR** - Brazil\n" + "**JP** - Japan\n" + "**KR** - Korea\n"
+            + "**LAN** - Latin America North\n" + "**LAS** - Latin America South\n"
+            + "**OCE** - Oceania\n" + "**RU** - Russia\n" + "**TR** - Turkey\n";
+    private static final Template RANK_LINE = Template.compile("**{}:** {} {} {}LP (W/L: {}/{} {}%)\n");
+    private static final Template MASTERY_LINE = Template.compile("{}. {} - {} pts\n");
+    private static final Template LIVE_HEADER = Template.compile("__**{}**__ is in a __**{}**__ game!\n"
+            + "**Server:** {}\n**Champion: **{}\n**Spells: **{}/{}\n**Duration: **{}\n**Team Side: **{}\n\n");
+    private static volatile boolean staticDataReady;
+    private final UsageTracker usage;
+    
+    public LeagueListener(UsageTracker usage){
+        this.usage = usage;
+    }
     
     /**
-     * onMessageReceived - Handles the Listeners actions when a message is received
-     * in a channel the bot has read access to.
+     * registerCommands - Registers the League of Legends commands with the dispatcher
+     * @param dispatcher - CommandDispatcher to route the commands from
+     */
+    public void registerCommands(CommandDispatcher dispatcher){
+        dispatcher.register(this, "lolHelp", "lol", "lolRegion", "lolRanks", "lolRanksRegion");
+        //Live games look up every player so they get longer to finish and fewer in the queue
+        dispatcher.register(this, 45, 10, "lolLive", "lolLiveRegion");
+    }
+    
+    /**
+     * onCommand - Handles the League of Legends commands routed from the dispatcher
      * @param event - MessageReceivedEvent instance generated when the bot
      * a message the bot can read it received.
+     * @param command - the command name without the prefix
+     * @param args - CommandArgs of the arguments given after the command
      */
     @Override
-    public void onMessageReceived(MessageReceivedEvent event){
-        try {
-            //Get the readable contents of the message
-            String message = event.getMessage().getContentDisplay();
-            //Dont respond to other bots, this bot, and only handle league commands
-            if (event.getAuthor().isBot() || !message.startsWith(GameBot.config.getProperty("prefix") + "lol")) return;
-            //Split the args on a space to get them all
-            ArrayList<String> args = new ArrayList<>(Arrays.asList(message.split(" ")));
-            //Get the command without the prefix
-            String command = args.get(0).substring(1);
-            //Remove the command from the argument list
-            args.remove(0);
-            
-            //Get number of args
-            int numArgs = args.size();
-            //Region abbreviation given
-            String regionGiven;
-            //For output formatting
-            StringBuilder outputString = new StringBuilder();
+    public void onCommand(MessageReceivedEvent event, String command, CommandArgs args){
+        //Get number of args
+        int numArgs = args.size();
+        //Region abbreviation given
+        String regionGiven;
+        try{
             //Switch used to process the command given
             switch(command){
                 //Outputs all the League of Legends related commands
                 case "lolHelp":
-                    outputString.setLength(0);
-                    outputString.append("__**League of Legends Commands**__\n");
-                    outputString.append("**!lol <summoner_name>:** Outputs info about given ***summoner_name*** in NA\n");
-                    outputString.append("**!lolRegion <region> <summoner_name>:** "
-                            + "Outputs info about given ***summoner_name*** in given ***region***\n");
-                    outputString.append("**!lolRanks <summoner_name>:** Outputs "
-                            + "given ***summoner_name***'s rank in each queue they are ranked in on the NA server\n");
-                    outputString.append("**!lolRanksRegion <region> <summoner_name>:** "
-                            + "Outputs given ***summoner_name***'s rank in each queue they are ranked in on the given ***region***\n");
-                    outputString.append("**!lolLive <summoner_name>:** Outputs info about given ***summoner_name***'s live game\n");
-                    outputString.append("**!lolLiveRegion <region> <summoner_name>:** Outputs info about given ***summoner_name***'s live "
-                            + "game on the given ***region***\n");
                     //Add use to db
-                    //dbOps.dbUpdate(event, "lolHelp");
+                    usage.increment(event, "lolHelp");
                     //Send message in channel it was received
-                    event.getChannel().sendMessage(outputString.toString()).queue();
+                    Replies.send(event.getChannel(), HELP_TEXT);
                     break;
                     //Outputs info about the given summoner if they are on the NA server
                 case "lol":
                     //Must have a summoner to search for
                     if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !lol <Summoner_Name>**").queue();
+                        Replies.send(event.getChannel(), "**Usage: !lol <Summoner_Name>**");
                         break;
                     }
                     //Process the summoner
-                    event.getChannel().sendMessage(summoner(args, "NA")).queue();
+                    Replies.send(event.getChannel(), summoner(args.rest(0).toString(), "NA", RateLimits.guildKey(event)));
                     //Add use to db
-                    //dbOps.dbUpdate(event, "lol");
+                    usage.increment(event, "lol");
                     break;
                     //Outputs info about the given summoner if they are on the given server
                 case "lolRegion":
                     /*Must have a region to search on and a summoner to search for.
                     The region given must be a key in the abbreviation hashmap*/
-                    if(numArgs < 2 || REGIONABB_MAP.get(args.get(0)) == null){
-                        event.getChannel().sendMessage("**Usage: !lolRegion <Region> <Summoner_Name>**\n" + regionOptions()).queue();
+                    if(numArgs < 2 || REGIONABB_MAP.get(args.getString(0)) == null){
+                        Replies.send(event.getChannel(), "**Usage: !lolRegion <Region> <Summoner_Name>**\n" + REGION_OPTIONS);
                         break;
                     }
-                    //Get the region abbreviation given and remove it from the args
-                    regionGiven = args.get(0);
-                    args.remove(0);
+                    //Get the region abbreviation given, the name is everything after it
+                    regionGiven = args.getString(0);
                     //Process the summoner
-                    event.getChannel().sendMessage(summoner(args, regionGiven)).queue();
+                    Replies.send(event.getChannel(), summoner(args.rest(1).toString(), regionGiven, RateLimits.guildKey(event)));
                     //Add use to db
-                    //dbOps.dbUpdate(event, "lolRegion");
+                    usage.increment(event, "lolRegion");
                     break;
                     //Outputs info about the Leagues the given summoner is ranked in on the NA server
                 case "lolRanks":
                     //Must have a summoner to search for
                     if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !lolRanks <Summoner_Name>**").queue();
+                        Replies.send(event.getChannel(), "**Usage: !lolRanks <Summoner_Name>**");
                         break;
                     }
                     //Process the summoner
-                    event.getChannel().sendMessage(summonerRanks(args, "NA")).queue();
+                    Replies.send(event.getChannel(), summonerRanks(args.rest(0).toString(), "NA", RateLimits.guildKey(event)));
                     //Add use to db
-                    //dbOps.dbUpdate(event, "lolRanks");
+                    usage.increment(event, "lolRanks");
                     break;
                     //Outputs info about the Leagues the given summoner is ranked in on the given server
                 case "lolRanksRegion":
                     /*Must have a region to search on and a summoner to search for.
                     The region given must be a key in the abbreviation hashmap*/
-                    if(numArgs < 2 || REGIONABB_MAP.get(args.get(0)) == null){
-                        event.getChannel().sendMessage("**Usage: !lolRanksRegion <Region> <Summoner_Name>**\n" + regionOptions()).queue();
+                    if(numArgs < 2 || REGIONABB_MAP.get(args.getString(0)) == null){
+                        Replies.send(event.getChannel(), "**Usage: !lolRanksRegion <Region> <Summoner_Name>**\n" + REGION_OPTIONS);
                         break;
                     }
-                    //Get the region abbreviation given and remove it from the args
-                    regionGiven = args.get(0);
-                    args.remove(0);
+                    //Get the region abbreviation given, the name is everything after it
+                    regionGiven = args.getString(0);
                     //Process the summoner
-                    event.getChannel().sendMessage(summonerRanks(args, regionGiven)).queue();
+                    Replies.send(event.getChannel(), summonerRanks(args.rest(1).toString(), regionGiven, RateLimits.guildKey(event)));
                     //Add use to db
-                    //dbOps.dbUpdate(event, "lolRanksRegion");
+                    usage.increment(event, "lolRanksRegion");
                     break;
                     //Outputs info about the current game the given summoner is in on NA
                 case "lolLive":
                     //Must have a summoner to search for
                     if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !lolCurrentGame <Summoner_Name>**\n").queue();
+                        Replies.send(event.getChannel(), "**Usage: !lolCurrentGame <Summoner_Name>**\n");
                         break;
                     }
                     //Process the summoner
-                    event.getChannel().sendMessage(summonerLiveGame(args, "NA")).queue();
+                    Replies.send(event.getChannel(), summonerLiveGame(args.rest(0).toString(), "NA", RateLimits.guildKey(event)));
                     //Add use to db
-                    //dbOps.dbUpdate(event, "lolLive");
+                    usage.increment(event, "lolLive");
                     break;
                     //Outputs info about the current game the given summoner is in on given region
                 case "lolLiveRegion":
                     /*Must have a region to search on and a summoner to search for.
                     The region given must be a key in the abbreviation hashmap*/
-                    if(numArgs < 2 || REGIONABB_MAP.get(args.get(0)) == null){
-                        event.getChannel().sendMessage("**Usage: !lolCurrentGameRegion <Region> <Summoner_Name>**\n" + regionOptions()).queue();
+                    if(numArgs < 2 || REGIONABB_MAP.get(args.getString(0)) == null){
+                        Replies.send(event.getChannel(), "**Usage: !lolCurrentGameRegion <Region> <Summoner_Name>**\n" + REGION_OPTIONS);
                         break;
                     }
-                    //Get the region abbreviation given and remove it from the args
-                    regionGiven = args.get(0);
-                    args.remove(0);
+                    //Get the region abbreviation given, the name is everything after it
+                    regionGiven = args.getString(0);
                     //Process the summoner
-                    event.getChannel().sendMessage(summonerLiveGame(args, regionGiven)).queue();
+                    Replies.send(event.getChannel(), summonerLiveGame(args.rest(1).toString(), regionGiven, RateLimits.guildKey(event)));
                     //Add use to db
-                    dbOps.dbUpdate(event, "lolLiveRegion");
+                    usage.increment(event, "lolLiveRegion");
                     break;
             }
-        } catch (SQLException | IllegalAccessException ex) {
-            Logger.getLogger(LeagueListener.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        catch(BusyException ex){
+            //Tell the user to come back later if the region is too busy
+            Replies.send(event.getChannel(), ex.getMessage());
         }
     }
     
     /**
-     * setUpOrianna - Sets up Orianna for the NA server
+     * setUpOrianna - Sets up Orianna for the NA server. Called once at startup
+     * and again whenever the config file changes.
      */
-    private void setUpOrianna(){
+    public static synchronized void setUpOrianna(){
         //Set up the config, api key, and default regian
         Orianna.loadConfiguration(new File(GameBot.config.getProperty("oriannaConfigPath")));
         Orianna.setRiotAPIKey(GameBot.config.getProperty("riotKey"));
@@ -209,40 +241,96 @@ public class LeagueListener extends ListenerAdapter{
     }
     
     /**
-     * getSummoner - Gets a summoner object of the given summonerName on 
-     * the NA server.
-     * @param summonerName - String of the given summoner name to process
-     * @return mySummoner - The Summoner object containing info from the API
+     * warmUpStaticData - Loads the champions, summoner spells and items of every
+     * warm up region at once, so the first League command after startup does not
+     * wait on Data Dragon. The regions are given as abbreviations in riotWarmupRegions.
+     * @return CompletableFuture - completes once everything is loaded
      */
-    private Summoner getSummoner(String summonerName){
-        //Get Summoner object to get output data from
-        Summoner mySummoner = Orianna.summonerNamed(summonerName).get();
-        return mySummoner;
+    public static CompletableFuture<Void> warmUpStaticData(){
+        List<Region> regions = new ArrayList<>();
+        for(CharSequence abbreviation : CommandArgs.split(GameBot.config.getProperty("riotWarmupRegions", "NA"), ',')){
+            String region = REGIONABB_MAP.get(abbreviation.toString().toUpperCase());
+            if(region != null)
+                regions.add(Region.valueOf(region));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, regions.size() * 3), CommandExecutor.namedThreads("riot-warmup"));
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        for(Region region : regions){
+            //Reading the size loads the whole list
+            loads.add(timedLoad("Champions", region, () -> Orianna.championsWithRegion(region).get().size(), pool));
+            loads.add(timedLoad("SummonerSpells", region, () -> Orianna.summonerSpellsWithRegion(region).get().size(), pool));
+            loads.add(timedLoad("Items", region, () -> Orianna.itemsWithRegion(region).get().size(), pool));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).whenComplete((done, ex) -> {
+            pool.shutdown();
+            staticDataReady = ex == null;
+            Logger.getLogger(LeagueListener.class.getName()).log(ex == null ? Level.INFO : Level.WARNING,
+                    "Static data warm up {0} in {1} ms", new Object[]{ex == null ? "finished" : "failed",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        });
     }
     
     /**
-     * getSummoneRegionSpecific - Gets a summoner object of the given summonerName on 
-     * the given server.
-     * @param summonerName - String of the given summoner name to process
-     * @param region - String of the given region abbreviation
-     * @return mySummoner - The Summoner object containing info from the API
+     * isStaticDataReady - Checks if the static data was loaded at startup
+     * @return Boolean - true once the warm up has finished
      */
-    private Summoner getSummonerRegionSpecific(String summonerName, String region){
-        //Get Summoner object to get output data from
-        Summoner mySummoner = Orianna.summonerNamed(summonerName).withRegion(Region.valueOf(region)).get();
-        return mySummoner;
+    public static boolean isStaticDataReady(){
+        return staticDataReady;
     }
     
     /**
-     * getSummonerName - Gets a string of the original summoner name format since
-     * it is split into arguments when the message is received.
-     * @param args - ArrayList of the command arguments (args to join into a name)
-     * @return mySummonerName - Summoner name in the originally given format
+     * timedLoad - Runs one warm up load on the pool and logs how long it took
+     * @param name - name of the static data being loaded
+     * @param region - region the data is loaded for
+     * @param load - the load, giving back the number of entries loaded
+     * @param pool - ExecutorService to run the load on
+     * @return CompletableFuture - completes once the load is done
      */
-    private String getSummonerName(ArrayList args){
-        //Join the name
-        String mySummonerName = StringUtils.join(args, ' ');
-        return mySummonerName;
+    private static CompletableFuture<Void> timedLoad(String name, Region region, Supplier<Integer> load, ExecutorService pool){
+        return CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            int entries = load.get();
+            Logger.getLogger(LeagueListener.class.getName()).log(Level.INFO, "Loaded {0} {1} for {2} in {3} ms",
+                    new Object[]{entries, name, region, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+        }, pool);
+    }
+    
+    /**
+     * watchOriannaConfig - Starts a background thread that reloads Orianna
+     * when the config file is changed.
+     */
+    public static void watchOriannaConfig() throws IOException{
+        final Path configPath = Paths.get(GameBot.config.getProperty("oriannaConfigPath")).toAbsolutePath();
+        final WatchService watcher = FileSystems.getDefault().newWatchService();
+        configPath.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        Thread watchThread = CommandExecutor.namedThreads("orianna-config-watch").newThread(() -> {
+            try{
+                while(true){
+                    WatchKey key = watcher.take();
+                    //Reload once for all the changes to the config file
+                    boolean changed = false;
+                    for(WatchEvent<?> watchEvent : key.pollEvents()){
+                        if(configPath.getFileName().equals(watchEvent.context()))
+                            changed = true;
+                    }
+                    key.reset();
+                    if(changed){
+                        try{
+                            setUpOrianna();
+                            Logger.getLogger(LeagueListener.class.getName()).log(Level.INFO, "Reloaded Orianna config from {0}", configPath);
+                        }
+                        catch(RuntimeException ex){
+                            Logger.getLogger(LeagueListener.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+                    }
+                }
+            }
+            catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        });
+        watchThread.start();
     }
     
     /**
@@ -352,50 +440,32 @@ public class LeagueListener extends ListenerAdapter{
         return teamMap;
     }
     
-    /**
-     * regionOptions - Creates a StringBuilder of all the available regions 
-     * and their abbreviations.
-     * @return regionString - String of available regions and their abbreviations
-     */
-    private String regionOptions(){
-        StringBuilder regionString = new StringBuilder();
-        regionString.append("__**Region Options**__\n").append("**NA** - North America\n")
-                .append("**EUNE** - Europe Nordic & East\n").append("**EUW** - Europe West\n")
-                .append("**BR** - Brazil\n").append("**JP** - Japan\n").append("**KR** - Korea\n")
-                .append("**LAN** - Latin America North\n").append("**LAS** - Latin America South\n")
-                .append("**OCE** - Oceania\n").append("**RU** - Russia\n").append("**TR** - Turkey\n");
-        return regionString.toString();
-    }
-    
     /**
      * summonerRanks - Outputs info about all the Leagues the given summoner is 
      * ranked in on the NA server by default, otherwise the given server.
-     * @param args - ArrayList of the given summoner name split on spaces
+     * @param summonerName - the given summoner name
      * @param region - String of the given abbreviated region to search on
+     * @param guildKey - key of the guild the lookups are for
      * @return String - String of the formatted output
      */
-    private String summonerRanks(ArrayList args, String region){
-        //Reset output string, set up Orianna, and summoner name
-        setUpOrianna();
-        StringBuilder tempString = new StringBuilder();
-        //Build proper name
-        String summonerName = getSummonerName(args);
-        //Get the summoner, NA if no region is given
-        Summoner summoner;
-        if(region.equals("NA"))
-            summoner = getSummoner(summonerName);
-        else{
-            summoner = getSummonerRegionSpecific(summonerName, REGIONABB_MAP.get(region));
-        }
-        
+    private String summonerRanks(String summonerName, String region, String guildKey) throws BusyException{
+        //Reset output string and summoner name
+        StringBuilder tempString = new StringBuilder(RANK_LINE.estimate() * 4);
+        //Get the summoner on their regions scheduler
+        Region summonerRegion = Region.valueOf(REGIONABB_MAP.get(region));
+        Summoner summoner = RiotScheduler.summoner(summonerRegion, summonerName, guildKey);
         //Make sure summoner exists
-        if(!checkSummonerExists(summoner)){
+        if(summoner == null){
             return summonerDoesNotExist(summonerName, REGIONABB_MAP.get(region));
         }
         //Get proper profile name
         String properName = summoner.getName();
         //Get the positions summoner is in for the leagues they are ranked in
-        final LeaguePositions positions = summoner.getLeaguePositions();
+        final LeaguePositions positions = RiotScheduler.call(summonerRegion, guildKey, () -> {
+            LeaguePositions loaded = summoner.getLeaguePositions();
+            loaded.isEmpty();
+            return loaded;
+        });
         //If they are not ranked in any leagues output results and return
         if(positions.isEmpty()){
             tempString.append("**").append(properName).append("** is not ranked in any leagues!");
@@ -406,17 +476,12 @@ public class LeagueListener extends ListenerAdapter{
         //Go through each league and get the desired data from each one
         for(final LeaguePosition leaguePosition : positions) {
             //Queue name, tier name, division number, LP amount, W/L, and W/L ratio
-            tempString.append("**").append(QUEUE_MAP.get(leaguePosition.getQueue().toString())).append(":** ");
-            tempString.append(TIER_MAP.get(leaguePosition.getTier().toString())).append(" ");
-            tempString.append(leaguePosition.getDivision().toString()).append(" ");
-            tempString.append(String.valueOf(leaguePosition.getLeaguePoints())).append("LP ");
             int wins = leaguePosition.getWins();
             int losses = leaguePosition.getLosses();
             double winPercent = (double)wins/((double)wins+(double)losses);
-            tempString.append("(W/L: ").append(wins)
-                    .append("/").append(losses)
-                    .append(" ").append(Math.round(winPercent * 100))
-                    .append("%)\n");
+            RANK_LINE.renderTo(tempString, QUEUE_MAP.get(leaguePosition.getQueue().toString()),
+                    TIER_MAP.get(leaguePosition.getTier().toString()), leaguePosition.getDivision(),
+                    leaguePosition.getLeaguePoints(), wins, losses, Math.round(winPercent * 100));
             if(leaguePosition.getPromos() != null) {
                 // If the summoner is in their promos show progress
                 tempString.append("| Promos progress: ")
@@ -431,26 +496,19 @@ public class LeagueListener extends ListenerAdapter{
     /**
      * summonerRanks - Outputs info about the given summoner on the NA server 
      * by default, otherwise the given server.
-     * @param args - ArrayList of the given summoner name split on spaces
+     * @param summonerName - the given summoner name
      * @param region - String of the given abbreviated region to search on
+     * @param guildKey - key of the guild the lookups are for
      * @return String - String of the formatted output
      */
-    private String summoner(ArrayList args, String region){
-        //Reset output string, set up Orianna, and summoner name
-        setUpOrianna();
+    private String summoner(String summonerName, String region, String guildKey) throws BusyException{
+        //Reset output string and summoner name
         StringBuilder tempString = new StringBuilder();
-        //Build proper name
-        String summonerName = getSummonerName(args);
-        //Get the summoner, NA if no region is given
-        Summoner summoner;
-        if(region.equals("NA"))
-            summoner = getSummoner(summonerName);
-        else{
-            summoner = getSummonerRegionSpecific(summonerName, REGIONABB_MAP.get(region));
-        }
-
+        //Get the summoner on their regions scheduler
+        Region summonerRegion = Region.valueOf(REGIONABB_MAP.get(region));
+        Summoner summoner = RiotScheduler.summoner(summonerRegion, summonerName, guildKey);
         //Make sure summoner exists
-        if(!checkSummonerExists(summoner)){
+        if(summoner == null){
             return summonerDoesNotExist(summonerName, REGIONABB_MAP.get(region));
         }
 
@@ -461,38 +519,22 @@ public class LeagueListener extends ListenerAdapter{
 
         tempString.append("\n__**Top 3 Champs By Mastery:**__\n");
         //Get the champion mastery stats on all champs they have a point on
-        ChampionMasteries champMasts = summoner.getChampionMasteries();
+        ChampionMasteries champMasts = RiotScheduler.call(summonerRegion, guildKey, () -> {
+            ChampionMasteries loaded = summoner.getChampionMasteries();
+            loaded.isEmpty();
+            return loaded;
+        });
         //Only want to display their top three, which are the first three
         for(int i = 0; i < 3; i++){
             //Get the champ
             ChampionMastery singleChampMast = champMasts.get(i);
             //Build the Rank, champion name, and champion points output
-            tempString.append(String.valueOf(i+1)).append(". ")
-                    .append(singleChampMast.getChampion().getName()).append(" - ")
-                    .append(String.valueOf(singleChampMast.getPoints()))
-                    .append(" pts\n");
+            MASTERY_LINE.renderTo(tempString, i+1, singleChampMast.getChampion().getName(), singleChampMast.getPoints());
         }
-        System.out.println(summoner.isInGame());
         //Send message in channel it was received in
         return tempString.toString();
     }
 
-    /**
-     * checkSummonerExists - Return true if summoner exists false otherwise
-     * @param summoner - summoner to check if they exist
-     */
-    private Boolean checkSummonerExists(Summoner summoner){
-        //Used to check if summoner is valid for now
-        //Dont know a different way yet
-        try{
-            summoner.getLevel();
-        }
-        catch(NullPointerException e){
-            return false;
-        }
-        return true;
-    }
-    
     /**
      * summonerDoesNotExist - Outputs that the summoner does not exist on the NA server
      * @param summonerName - name of given summoner
@@ -507,32 +549,29 @@ public class LeagueListener extends ListenerAdapter{
     /**
      * summonerLiveGame - Outputs info about the current game the given summoner
      * is in on the given server
-     * @param args - ArrayList of the given summoner name split on spaces
+     * @param summonerName - the given summoner name
      * @param region - String of the given abbreviated region to search on
+     * @param guildKey - key of the guild the lookups are for
      * @return String - String of the formatted output
      */
-    private String summonerLiveGame(ArrayList args, String region){
-        //Setup output string, set up Orianna, and summoner name
-        setUpOrianna();
-        StringBuilder tempString = new StringBuilder();
-        //Build proper name
-        String summonerName = getSummonerName(args);
-        //Get the summoner, NA if no region is given
-        Summoner summoner;
-        if(region.equals("NA"))
-            summoner = getSummoner(summonerName);
-        else{
-            summoner = getSummonerRegionSpecific(summonerName, REGIONABB_MAP.get(region));
-        }
-
+    private String summonerLiveGame(String summonerName, String region, String guildKey) throws BusyException{
+        //Setup output string sized for the header and ten player rows, and summoner name
+        StringBuilder tempString = new StringBuilder(LIVE_HEADER.estimate() + 1024);
+        //Get the summoner on their regions scheduler
+        Region summonerRegion = Region.valueOf(REGIONABB_MAP.get(region));
+        Summoner summoner = RiotScheduler.summoner(summonerRegion, summonerName, guildKey);
         //Make sure summoner exists
-        if(!checkSummonerExists(summoner)){
+        if(summoner == null){
             return summonerDoesNotExist(summonerName, REGIONABB_MAP.get(region));
         }
         //Proper summoner name
         String properName = summoner.getName();
         //Get the positions summoner is in for the leagues they are ranked in
-        final CurrentMatch currentGame = summoner.getCurrentMatch();
+        final CurrentMatch currentGame = RiotScheduler.call(summonerRegion, guildKey, () -> {
+            CurrentMatch loaded = summoner.getCurrentMatch();
+            loaded.exists();
+            return loaded;
+        });
         //Make sure they are in a game
         if(currentGame.exists()){
             String queueName = "Unkown";
@@ -550,46 +589,60 @@ public class LeagueListener extends ListenerAdapter{
                     + ":" + seconds;
             if(gameDuration.length() > 5)
                 gameDuration = "Loading In!";
-            tempString.append("__**").append(properName).append("**__ is in a __**")
-                    .append(queueName).append("**__ game!\n")
-                    .append("**Server:** ").append(REGION_MAP.get(REGIONABB_MAP.get(region))).append("\n")
-                    .append("**Champion: **").append(player.getChampion().getName()).append("\n")
-                    .append("**Spells: **").append(player.getSummonerSpellD().getName()).append("/").append(player.getSummonerSpellF().getName()).append("\n")
-                    .append("**Duration: **").append(gameDuration).append("\n")
-                    .append("**Team Side: **").append(TEAM_MAP.get(player.getTeam().getSide().name())).append("\n\n");
+            LIVE_HEADER.renderTo(tempString, properName, queueName, REGION_MAP.get(REGIONABB_MAP.get(region)),
+                    player.getChampion().getName(), player.getSummonerSpellD().getName(), player.getSummonerSpellF().getName(),
+                    gameDuration, TEAM_MAP.get(player.getTeam().getSide().name()));
                 List<CurrentMatchTeam> teams = Arrays.asList(currentGame.getBlueTeam(), currentGame.getRedTeam());
+                //Fire every players rank lookups at once, kept in team order
+                List<List<PlayerLookup>> teamLookups = new ArrayList<>();
+                for(CurrentMatchTeam team : teams){
+                    List<PlayerLookup> lookups = new ArrayList<>();
+                    team.getParticipants().forEach((teamPlayer) -> lookups.add(new PlayerLookup(teamPlayer, summonerRegion, guildKey)));
+                    teamLookups.add(lookups);
+                }
+                //All lookups share one deadline
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(LOOKUP_TIMEOUT);
                 tempString.append("__**Solo/Duo 5v5 Stats**__\n");
                 tempString.append("Name | Champ | S8 Rank | Ranked WR | S7 Rank |\n\n");
-                for(CurrentMatchTeam team : teams){
-                    tempString.append("__**").append(TEAM_MAP.get(team.getSide().name())).append(" Team**__\n");
-                    team.getParticipants().forEach((teamPlayer) -> {
-                        //Get Summoner and league position
-                        Summoner playerProf = teamPlayer.getSummoner();
-                        LeaguePosition position = playerProf.getLeaguePosition(Queue.RANKED_SOLO_5x5);
+                for(int i = 0; i < teams.size(); i++){
+                    tempString.append("__**").append(TEAM_MAP.get(teams.get(i).getSide().name())).append(" Team**__\n");
+                    for(PlayerLookup lookup : teamLookups.get(i)){
                         //Get Summoner name
-                        tempString.append(playerProf.getName()).append(" | ");
+                        tempString.append(lookup.player.getSummoner().getName()).append(" | ");
                         //Get Champion name
-                        tempString.append(teamPlayer.getChampion().getName()).append(" | ");
+                        tempString.append(lookup.player.getChampion().getName()).append(" | ");
                         //Get Ranked stats if applicable
-                        if(position != null){
-                            tempString.append(position.getTier().toString().substring(0,1));
-                            //Get the integer value of the players Solo/Duo 5v5 Division
-                            tempString.append(DIVISION_MAP.get(position.getDivision().toString()));
-                            //Get the amount of LP the player has in the Solo/Duo 5v5 Queue
-                            tempString.append("(").append(position.getLeaguePoints()).append("LP) | ");
-                            //Get win percent and games played
-                            int wins = position.getWins();
-                            int losses = position.getLosses();
-                            double winPercent = (double)wins/((double)wins+(double)losses);
-                            tempString.append(Math.round(winPercent * 100)).append("%(").append(wins+losses).append("GP) | ");
+                        LeaguePosition position;
+                        try{
+                            position = awaitLookup(lookup.position, deadline);
+                            if(position != null){
+                                tempString.append(position.getTier().toString().substring(0,1));
+                                //Get the integer value of the players Solo/Duo 5v5 Division
+                                tempString.append(DIVISION_MAP.get(position.getDivision().toString()));
+                                //Get the amount of LP the player has in the Solo/Duo 5v5 Queue
+                                tempString.append("(").append(position.getLeaguePoints()).append("LP) | ");
+                                //Get win percent and games played
+                                int wins = position.getWins();
+                                int losses = position.getLosses();
+                                double winPercent = (double)wins/((double)wins+(double)losses);
+                                tempString.append(Math.round(winPercent * 100)).append("%(").append(wins+losses).append("GP) | ");
+                            }
+                            else{
+                                tempString.append("Unranked | ");
+                                tempString.append("N/A | ");
+                            }
                         }
-                        else{
-                            tempString.append("Unranked | ");
-                            tempString.append("N/A | ");
+                        catch(TimeoutException | ExecutionException ex){
+                            tempString.append("N/A | N/A | ");
                         }
                         //Get players highest tier last season
-                        tempString.append(playerProf.getHighestTier(Season.SEASON_8).toString().substring(0,1)).append("\n");
-                    });
+                        try{
+                            tempString.append(awaitLookup(lookup.highestTier, deadline).toString().substring(0,1)).append("\n");
+                        }
+                        catch(TimeoutException | ExecutionException ex){
+                            tempString.append("N/A\n");
+                        }
+                    }
                     tempString.append("\n");
                 }
             }
@@ -601,4 +654,54 @@ public class LeagueListener extends ListenerAdapter{
         }
         return tempString.toString();
     }
+    
+    /**
+     * awaitLookup - Waits on a player lookup until the shared deadline
+     * @param lookup - the lookup to wait on
+     * @param deadline - System.nanoTime the lookups have to finish by
+     * @return T - the result of the lookup
+     */
+    private static <T> T awaitLookup(Future<T> lookup, long deadline) throws TimeoutException, ExecutionException{
+        try{
+            return lookup.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        catch(TimeoutException ex){
+            //Dont make the call at all if it has not started yet
+            lookup.cancel(false);
+            throw ex;
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new TimeoutException();
+        }
+    }
+    
+    /**
+     * Purpose: Starts the ranked lookups for one player of a live game on the
+     * regions scheduler. Lookups turned away by a busy region fail and are shown
+     * as N/A.
+     * 
+     * Variables            Description
+     * 
+     * player               Player in the live game
+     * position             Future of the players Solo/Duo 5v5 league position, null if unranked
+     * highestTier          Future of the players highest tier last season
+     */
+    private static class PlayerLookup {
+        private final Player player;
+        private final CompletableFuture<LeaguePosition> position;
+        private final CompletableFuture<Tier> highestTier;
+        
+        /**
+         * @param player - Player in the live game
+         * @param region - Region the game is on
+         * @param guildKey - key of the guild the lookups are for
+         */
+        private PlayerLookup(Player player, Region region, String guildKey){
+            this.player = player;
+            Summoner playerProf = player.getSummoner();
+            position = RiotScheduler.submit(region, guildKey, () -> playerProf.getLeaguePosition(Queue.RANKED_SOLO_5x5));
+            highestTier = RiotScheduler.submit(region, guildKey, () -> playerProf.getHighestTier(Season.SEASON_8));
+        }
+    }
 }
@@ -0,0 +1,317 @@
+package gamebot;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Purpose: Keeps the bots latency histograms, counters and gauges so it can be
+ * seen where time goes. Metrics are named like name{label="value"} and are
+ * served in the Prometheus text format from a local HTTP endpoint, and as a
+ * short summary for !botStats.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * QUANTILES            Quantiles given for every histogram
+ * HISTOGRAMS           ConcurrentSkipListMap of the latency histograms by name
+ * COUNTERS             ConcurrentSkipListMap of the counters by name
+ * GAUGES               ConcurrentSkipListMap of the gauges by name
+ *
+ */
+public final class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, DoubleSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics(){
+    }
+
+    /**
+     * Purpose: Latency histogram with buckets whose width grows with the value, so
+     * every recording is kept to within about 6% no matter how large it is.
+     * Values are kept in microseconds. Recording takes no locks.
+     *
+     * Variables            Description
+     *
+     * SUB_BITS             Bits of each value kept exactly, sets the precision
+     * SUB_COUNT            Number of buckets for each power of two
+     * MAX_MAGNITUDE        Highest bit a value can have, larger values are clamped
+     * counts               AtomicLongArray of the number of values in each bucket
+     * total                Number of values recorded
+     * sum                  Sum of the values recorded
+     * max                  Largest value recorded
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int MAX_MAGNITUDE = 40;
+        private final AtomicLongArray counts = new AtomicLongArray(2 * SUB_COUNT + (MAX_MAGNITUDE - SUB_BITS) * SUB_COUNT);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * recordNanos - Records one latency
+         * @param nanos - the latency in nanoseconds
+         */
+        public void recordNanos(long nanos){
+            long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+            counts.incrementAndGet(index(micros));
+            total.increment();
+            sum.add(micros);
+            long seen;
+            while(micros > (seen = max.get()) && !max.compareAndSet(seen, micros)){
+            }
+        }
+
+        public long getCount(){
+            return total.sum();
+        }
+
+        /**
+         * getMeanMillis - Gets the average latency
+         * @return double - the average in milliseconds, 0 if nothing was recorded
+         */
+        public double getMeanMillis(){
+            long count = total.sum();
+            return count == 0 ? 0 : sum.sum() / 1000.0 / count;
+        }
+
+        public double getMaxMillis(){
+            return max.get() / 1000.0;
+        }
+
+        public double getSumSeconds(){
+            return sum.sum() / 1e6;
+        }
+
+        /**
+         * getQuantileMillis - Gets the latency a fraction of recordings were at or under
+         * @param quantile - the fraction, like 0.99
+         * @return double - the highest latency of the bucket the quantile falls in, in milliseconds
+         */
+        public double getQuantileMillis(double quantile){
+            long count = total.sum();
+            if(count == 0)
+                return 0;
+            long target = Math.max(1, (long)Math.ceil(quantile * count));
+            long seen = 0;
+            for(int i = 0; i < counts.length(); i++){
+                seen += counts.get(i);
+                if(seen >= target)
+                    return Math.min(highest(i), max.get()) / 1000.0;
+            }
+            return max.get() / 1000.0;
+        }
+
+        /**
+         * index - Gets the bucket a value falls in. Small values get a bucket each,
+         * larger ones share a bucket with values that have the same top bits.
+         * @param value - the value in microseconds
+         * @return int - index of the bucket
+         */
+        private static int index(long value){
+            if(value < 2 * SUB_COUNT)
+                return (int)value;
+            int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+            int shift = magnitude - SUB_BITS;
+            int sub = (int)Math.min((value >> shift), 2 * SUB_COUNT - 1) - SUB_COUNT;
+            return 2 * SUB_COUNT + (shift - 1) * SUB_COUNT + sub;
+        }
+
+        /**
+         * highest - Gets the largest value a bucket holds
+         * @param index - index of the bucket
+         * @return long - the largest value in microseconds
+         */
+        private static long highest(int index){
+            if(index < 2 * SUB_COUNT)
+                return index;
+            int shift = (index - 2 * SUB_COUNT) / SUB_COUNT + 1;
+            long sub = (index - 2 * SUB_COUNT) % SUB_COUNT + SUB_COUNT;
+            return ((sub + 1) << shift) - 1;
+        }
+    }
+
+    /**
+     * name - Builds a metric name with labels
+     * @param base - the metric name
+     * @param labels - label names and values, in pairs
+     * @return String - the name as name{label="value",...}
+     */
+    public static String name(String base, String... labels){
+        if(labels.length == 0)
+            return base;
+        StringBuilder name = new StringBuilder(base).append('{');
+        for(int i = 0; i + 1 < labels.length; i += 2){
+            if(i > 0)
+                name.append(',');
+            name.append(labels[i]).append("=\"").append(labels[i + 1].replace("\"", "")).append('"');
+        }
+        return name.append('}').toString();
+    }
+
+    /**
+     * histogram - Gets a histogram, creating it the first time it is asked for
+     * @param name - the metric name
+     * @return Histogram - the histogram
+     */
+    public static Histogram histogram(String name){
+        return HISTOGRAMS.computeIfAbsent(name, (key) -> new Histogram());
+    }
+
+    /**
+     * recordNanos - Records a latency in a histogram
+     * @param name - the metric name
+     * @param nanos - the latency in nanoseconds
+     */
+    public static void recordNanos(String name, long nanos){
+        histogram(name).recordNanos(nanos);
+    }
+
+    /**
+     * increment - Adds one to a counter
+     * @param name - the metric name
+     */
+    public static void increment(String name){
+        COUNTERS.computeIfAbsent(name, (key) -> new LongAdder()).increment();
+    }
+
+    /**
+     * gauge - Registers a value that is read whenever the metrics are shown
+     * @param name - the metric name
+     * @param value - DoubleSupplier of the current value
+     */
+    public static void gauge(String name, DoubleSupplier value){
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * scrape - Gets every metric in the Prometheus text format
+     * @return String - one line per value
+     */
+    public static String scrape(){
+        StringBuilder out = new StringBuilder(4096);
+        for(Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()){
+            Histogram histogram = entry.getValue();
+            for(double quantile : QUANTILES)
+                out.append(withLabel(entry.getKey(), "quantile", Double.toString(quantile))).append(' ')
+                        .append(histogram.getQuantileMillis(quantile) / 1000).append('\n');
+            out.append(withSuffix(entry.getKey(), "_sum")).append(' ').append(histogram.getSumSeconds()).append('\n');
+            out.append(withSuffix(entry.getKey(), "_count")).append(' ').append(histogram.getCount()).append('\n');
+        }
+        for(Map.Entry<String, LongAdder> entry : COUNTERS.entrySet())
+            out.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+        for(Map.Entry<String, DoubleSupplier> entry : GAUGES.entrySet())
+            out.append(entry.getKey()).append(' ').append(entry.getValue().getAsDouble()).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * summary - Gets a readable summary of the metrics for a chat reply. Series
+     * with nothing recorded and gauges at zero are left out so it fits in one message.
+     * @return String - the latencies, counters and gauges
+     */
+    public static String summary(){
+        StringBuilder latency = new StringBuilder(1024);
+        for(Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()){
+            Histogram histogram = entry.getValue();
+            if(histogram.getCount() == 0)
+                continue;
+            latency.append(String.format("%-44s %7d %8.1f %8.1f %8.1f%n", entry.getKey(), histogram.getCount(),
+                    histogram.getQuantileMillis(0.5), histogram.getQuantileMillis(0.99), histogram.getMaxMillis()));
+        }
+        StringBuilder counters = new StringBuilder(512);
+        for(Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()){
+            long count = entry.getValue().sum();
+            if(count != 0)
+                counters.append(String.format("%-52s %d%n", entry.getKey(), count));
+        }
+        StringBuilder gauges = new StringBuilder(512);
+        for(Map.Entry<String, DoubleSupplier> entry : GAUGES.entrySet()){
+            double value = entry.getValue().getAsDouble();
+            if(value != 0)
+                gauges.append(String.format("%-52s %.3f%n", entry.getKey(), value));
+        }
+        StringBuilder out = new StringBuilder(2048);
+        if(latency.length() > 0)
+            section(out, "Latency (ms)", String.format("%-44s %7s %8s %8s %8s%n", "name", "count", "p50", "p99", "max") + latency);
+        section(out, "Counters", counters);
+        section(out, "Gauges", gauges);
+        return out.length() == 0 ? "No metrics recorded yet." : out.substring(0, out.length() - 1);
+    }
+
+    /**
+     * section - Adds a titled code block to a summary, if it has any lines
+     * @param out - the summary
+     * @param title - title of the section
+     * @param lines - lines of the section
+     */
+    private static void section(StringBuilder out, String title, CharSequence lines){
+        if(lines.length() == 0)
+            return;
+        out.append("__**").append(title).append("**__\n```\n").append(lines).append("```\n");
+    }
+
+    /**
+     * startServer - Serves the metrics at /metrics for a scraper
+     * @param host - address to listen on, normally the loopback address
+     * @param port - port to listen on
+     */
+    public static void startServer(String host, int port) throws IOException{
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", (exchange) -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try(OutputStream out = exchange.getResponseBody()){
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(CommandExecutor.namedThreads("metrics-http")));
+        server.start();
+    }
+
+    /**
+     * withLabel - Adds a label to a metric name
+     * @param name - the metric name, with or without labels
+     * @param label - the label to add
+     * @param value - value of the label
+     * @return String - the name with the label added
+     */
+    private static String withLabel(String name, String label, String value){
+        String pair = label + "=\"" + value + "\"";
+        int brace = name.indexOf('{');
+        if(brace < 0)
+            return name + "{" + pair + "}";
+        return name.substring(0, name.length() - 1) + "," + pair + "}";
+    }
+
+    /**
+     * withSuffix - Adds a suffix to the base of a metric name
+     * @param name - the metric name, with or without labels
+     * @param suffix - the suffix to add, like _count
+     * @return String - the name with the suffix before its labels
+     */
+    private static String withSuffix(String name, String suffix){
+        int brace = name.indexOf('{');
+        if(brace < 0)
+            return name + suffix;
+        return name.substring(0, brace) + suffix + name.substring(brace);
+    }
+}
@@ -2,157 +2,218 @@ package gamebot;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.dv8tion.jda.core.entities.User;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.core.hooks.ListenerAdapter;
 import org.apache.commons.lang.StringUtils;
 
 /**
- * Purpose: This class implements a ListenerAdapter for a discord bot. It checks
- * for all the non-game related commands and outputs a command specific 
+ * Purpose: This class implements a CommandHandler for a discord bot. It handles
+ * all the non-game related commands and outputs a command specific 
  * message to the channel it received it in.
  * 
  * @author Colin Keys
  * 
  * Variables            Description
  * 
+ * private static final
+ * 
+ * HELP_TEXT            Reply to !help
+ * ADMIN_IDS            Ids of the users allowed to use the admin commands
+ * 
  * private
  * 
- * dbOps                DataboseOps object for database operations
+ * usage                UsageTracker to count command uses
+ * dbOps                DatabaseOps object to read the usage stats with
  * 
  */
-public class MyListener extends ListenerAdapter {
-    private final DatabaseOps dbOps = new DatabaseOps();
+public class MyListener implements CommandHandler {
+    private static final String HELP_TEXT = "__**Commands**__\n"
+            + "**!ping:** responds with pong!\n"
+            + "**!buddy:** responds with guy!\n"
+            + "**!roll [number]:** Randomly gets a value up to the selected ***number*** (Max 9 digits | default is 100)\n"
+            + "**!gimme <noun>:** Inputs ***item*** and ***noun*** into a static sentence\n"
+            + "**!reverse <sentence>:** Responds with the given ***sentence*** reversed\n"
+            + "**!stats:** Outputs the most used commands and the users who use them the most, recent uses can take a short while to show up\n"
+            + "**!lolHelp:** Outputs info about the available League of Legends commands\n"
+            + "**!fnHelp:** Outputs info about the available Fortnite commands\n";
+    private static final List<String> ADMIN_IDS = adminIds();
+    private final UsageTracker usage;
+    private final DatabaseOps dbOps;
+    
+    public MyListener(UsageTracker usage, DatabaseOps dbOps){
+        this.usage = usage;
+        this.dbOps = dbOps;
+    }
+    
+    /**
+     * registerCommands - Registers the basic commands with the dispatcher
+     * @param dispatcher - CommandDispatcher to route the commands from
+     */
+    public void registerCommands(CommandDispatcher dispatcher){
+        dispatcher.register(this, "help", "ping", "buddy", "roll", "gimme", "reverse", "stats", "botStats");
+    }
+    
+    /**
+     * onCommand - Handles the basic commands routed from the dispatcher
+     * @param event - MessageReceivedEvent instance generated when the bot
+     * a message the bot can read it received.
+     * @param command - the command name without the prefix
+     * @param args - CommandArgs of the arguments given after the command
+     */
     @Override
-    public void onMessageReceived(MessageReceivedEvent event){
-        try {
-            //Get the readable contents of the message
-            String message = event.getMessage().getContentDisplay();
-            //Dont respond to other bots, this bot, and only handle basic commands
-            if (event.getAuthor().isBot() || !message.startsWith(GameBot.config.getProperty("prefix"))
-                    || message.startsWith(GameBot.config.getProperty("prefix") + "lol")
-                    || message.startsWith(GameBot.config.getProperty("prefix") + "fn")) return;
-            //Split the args on a space to get them all
-            ArrayList<String> args = new ArrayList<>(Arrays.asList(message.split(" ")));
-            //Get the command without the prefix
-            String command = args.get(0).substring(1);
-            //Remove the command from the argument list
-            args.remove(0);
-            //Geth the amount of arguments given
-            int numArgs = args.size();
-            StringBuilder outputString = new StringBuilder();
-            //Switch used to process the command given
-            switch(command){
-                //Outputs all the basic commands and help commands for other listeners
-                case "help":
-                    outputString.setLength(0);
-                    outputString.append("__**Commands**__\n");
-                    outputString.append("**!ping:** responds with pong!\n");
-                    outputString.append("**!buddy:** responds with guy!\n");
-                    outputString.append("**!roll [number]:** Randomly gets a value "
-                            + "up to the selected ***number*** (Max 9 digits | default is 100)\n");
-                    outputString.append("**!gimme <noun>:** Inputs ***item*** and "
-                            + "***noun*** into a static sentence\n");
-                    outputString.append("**!reverse <sentence>:** Responds with the given ***sentence*** reversed\n");
-                    outputString.append("**!lolHelp:** Outputs info about the available League of Legends commands\n");
-                    outputString.append("**!fnHelp:** Outputs info about the available Fortnite commands\n");
-                    event.getChannel().sendMessage(outputString.toString()).queue();
-                    //Add use to db
-                    dbOps.dbUpdate(event, "help");
-                    break;
-                    //Outputs pong!
-                case "ping":
-                    //Send message in channel it was received
-                    event.getChannel().sendMessage("pong!").queue();
-                    //Add use to db
-                    //dbOps.dbUpdate(event, "ping");
+    public void onCommand(MessageReceivedEvent event, String command, CommandArgs args){
+        //Geth the amount of arguments given
+        int numArgs = args.size();
+        StringBuilder outputString = new StringBuilder();
+        //Switch used to process the command given
+        switch(command){
+            //Outputs all the basic commands and help commands for other listeners
+            case "help":
+                Replies.send(event.getChannel(), HELP_TEXT);
+                //Add use to db
+                usage.increment(event, "help");
+                break;
+                //Outputs pong!
+            case "ping":
+                //Send message in channel it was received
+                Replies.send(event.getChannel(), "pong!");
+                //Add use to db
+                usage.increment(event, "ping");
+                break;
+                //Outputs guy!
+            case "buddy":
+                //Send message in channel it was received
+                Replies.send(event.getChannel(), "guy!");
+                //Add use to db
+                usage.increment(event, "buddy");
+                break;
+                //Outputs a random number between 1-100, or 1-given number
+            case "roll":
+                User user = event.getAuthor();
+                if(user.getName().equals("cRopFro") && user.getDiscriminator().equals("0300")){
+                    Replies.send(event.getChannel(), "weed");
                     break;
-                    //Outputs guy!
-                case "buddy":
-                    //Send message in channel it was received
-                    event.getChannel().sendMessage("guy!").queue();
-                    //Add use to db
-                    //dbOps.dbUpdate(event, "buddy");
+                }
+                //Set max value and output string
+                int max = 100;
+                outputString.setLength(0);
+                //if a value is given change max value to that
+                if(numArgs >= 1){
+                    String maxRange = args.getString(0);
+                    //Incase they type a negative number
+                    maxRange = maxRange.replace("-", "");
+                    //Have a max number
+                    if(StringUtils.isNumericSpace(maxRange) && maxRange.length() < 10)
+                        max = Integer.parseInt(maxRange);
+                }
+                //Pick random number between 1 (inclusive) and max (exclusive)
+                String randomNum = String.valueOf(ThreadLocalRandom.current().nextInt(1, max + 1));
+                outputString.append(event.getAuthor().getName()).append(" rolls ").append(randomNum);
+                //Send message in channel it was received
+                Replies.send(event.getChannel(), outputString.toString());
+                //Add use to db
+                usage.increment(event, "roll");
+                break;
+                //Outputs a siple sentence with the given argument
+            case "gimme":
+                //Must have at least 1 args
+                if(numArgs < 1){
+                    Replies.send(event.getChannel(), "**Usage: !gimme <noun>**");
                     break;
-                    //Outputs a random number between 1-100, or 1-given number
-                case "roll":
-                    User user = event.getAuthor();
-                    if(user.getName().equals("cRopFro") && user.getDiscriminator().equals("0300")){
-                        event.getChannel().sendMessage("weed").queue();
-                        break;
-                    }
-                    //Set max value and output string
-                    int max = 100;
-                    outputString.setLength(0);
-                    //if a value is given change max value to that
-                    if(numArgs >= 1){
-                        String maxRange = args.get(0);
-                        //Incase they type a negative number
-                        maxRange = maxRange.replace("-", "");
-                        //Have a max number
-                        if(StringUtils.isNumericSpace(maxRange) && maxRange.length() < 10)
-                            max = Integer.parseInt(maxRange);
-                    }
-                    //Pick random number between 1 (inclusive) and max (exclusive)
-                    String randomNum = String.valueOf(ThreadLocalRandom.current().nextInt(1, max + 1));
-                    outputString.append(event.getAuthor().getName()).append(" rolls ").append(randomNum);
-                    //Send message in channel it was received
-                    event.getChannel().sendMessage(outputString.toString()).queue();
-                    //Add use to db
-                    //dbOps.dbUpdate(event, "roll");
+                }
+                //Build output
+                outputString.setLength(0);
+                //Join the arguments
+                outputString.append("Gimme dat ").append(args.rest(0)).append("!");
+                //Send message in channel it was received
+                Replies.send(event.getChannel(), outputString.toString());
+                //Add use to db
+                usage.increment(event, "gimme");
+                break;
+                //Outputs the given argument backwards
+            case "reverse":
+                //Must have something to reverse
+                if(numArgs < 1){
+                    Replies.send(event.getChannel(), "**Usage: !reverse <sentence>**");
                     break;
-                    //Outputs a siple sentence with the given argument
-                case "gimme":
-                    //Must have at least 1 args
-                    if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !gimme <noun>**").queue();
-                        break;
-                    }
-                    //Build output
+                }
+                //Everything after the command is the sentence, send it back in the channel it was received
+                Replies.send(event.getChannel(), reverse(args.rest(0)));
+                //Add use to db
+                usage.increment(event, "reverse");
+                break;
+                //Outputs the most used commands and most active users
+            case "stats":
+                //Add use to db
+                usage.increment(event, "stats");
+                //Uses still waiting on the next usage flush are not counted yet
+                try{
+                    Map<String, Long> commands = dbOps.topCommands(5);
+                    Map<String, Long> users = dbOps.topUsers(5);
                     outputString.setLength(0);
-                    //Join the arguments
-                    outputString.append("Gimme dat ").append(StringUtils.join(args, ' ')).append("").append("!");
-                    //Send message in channel it was received
-                    event.getChannel().sendMessage(outputString.toString()).queue();
-                    //Add use to db
-                    //dbOps.dbUpdate(event, "gimme");
+                    outputString.append("__**Most Used Commands**__\n");
+                    for(Map.Entry<String, Long> entry : commands.entrySet())
+                        outputString.append("**!").append(entry.getKey()).append(":** ").append(entry.getValue()).append(" uses\n");
+                    outputString.append("__**Most Active Users**__\n");
+                    for(Map.Entry<String, Long> entry : users.entrySet())
+                        outputString.append("**").append(entry.getKey()).append(":** ").append(entry.getValue()).append(" uses\n");
+                    Replies.send(event.getChannel(), outputString.toString());
+                }
+                catch(SQLException ex){
+                    Logger.getLogger(MyListener.class.getName()).log(Level.SEVERE, null, ex);
+                    Replies.send(event.getChannel(), "Could not get the stats right now, try again later.");
+                }
+                break;
+                //Outputs where the bot is spending its time, admins only
+            case "botStats":
+                if(!ADMIN_IDS.contains(event.getAuthor().getId())){
+                    Replies.send(event.getChannel(), "**!botStats** is only for the bot's admins");
                     break;
-                    //Outputs the given argument backwards
-                case "reverse":
-                    //Must have something to reverse
-                    if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !reverse <sentence>**").queue();
-                        break;
-                    }
-                    //Join the split args into a sentence with spaces
-                    String sentence = StringUtils.join(args, ' ');
-                    //Set up output string, size and stack
-                    outputString.setLength(0);
-                    Stack back = new Stack();
-                    int size;
-                    //Add all letters to the stack
-                    for(int i = 0; i < sentence.length(); i++){
-                        back.add(sentence.charAt(i));
-                    }
-                    //Stack size, must be grabbed here or size will be dynamic
-                    size = back.size();
-                    //Pop all letters off the stack of the sentence to reverse it
-                    for(int i = 0; i < size; i++){
-                        outputString.append((back.pop()));
-                    }
-                    //Send message in channel it was received
-                    event.getChannel().sendMessage(outputString.toString()).queue();
-                    //Add use to db
-                    //dbOps.dbUpdate(event, "reverse");
-                    break;
-            }
-        } catch (SQLException | IllegalAccessException ex) {
-            Logger.getLogger(MyListener.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                //Say if League commands are still waiting on static data from the warm up
+                Replies.send(event.getChannel(), "**League static data:** " + (LeagueListener.isStaticDataReady() ? "loaded" : "not warmed up, loads on first use")
+                        + "\n" + Metrics.summary());
+                break;
+        }
+    }
+
+    /**
+     * reverse - Reverses the given sentence
+     * @param sentence - the sentence to reverse
+     * @return String - the sentence backwards
+     */
+    static String reverse(CharSequence sentence){
+        //Set up output string, size and stack
+        StringBuilder outputString = new StringBuilder(sentence.length());
+        Stack back = new Stack();
+        int size;
+        //Add all letters to the stack
+        for(int i = 0; i < sentence.length(); i++){
+            back.add(sentence.charAt(i));
         }
+        //Stack size, must be grabbed here or size will be dynamic
+        size = back.size();
+        //Pop all letters off the stack of the sentence to reverse it
+        for(int i = 0; i < size; i++){
+            outputString.append((back.pop()));
+        }
+        return outputString.toString();
+    }
+
+    /**
+     * adminIds - Reads the ids of the admins from the config
+     * @return List - the user ids in the comma separated adminIds property
+     */
+    private static List<String> adminIds(){
+        List<String> ids = new ArrayList<>();
+        for(CharSequence id : CommandArgs.split(GameBot.config.getProperty("adminIds", ""), ','))
+            ids.add(id.toString());
+        return ids;
     }
 }
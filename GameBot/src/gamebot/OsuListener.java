@@ -5,122 +5,144 @@
  */
 package gamebot;
 
-import java.io.BufferedReader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.net.ssl.HttpsURLConnection;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.core.hooks.ListenerAdapter;
-import org.apache.commons.lang.StringUtils;
+import okhttp3.Headers;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
- *
+ *Purpose: This class implements a CommandHandler for a discord bot. It handles
+ * all the osu! related commands. The listener outputs data from the osu! API
+ * through the use of HTTPS 'GET' requests
+ * 
  * @author Keeeeys
+ * 
+ * Variables                Description
+ * 
+ * private static final
+ * 
+ * HEADERS                  Headers every osu! API request is sent with
+ * BASE_URL                 osu! API url the endpoints are added to
+ * PLAYER_INFO              Template of a players info
+ * 
+ * private
+ * 
+ * userCache                LoadingCache of get_user responses keyed on lower case name. Stale
+ *                          users are given back right away and refreshed in the background
+ * 
  */
-public class OsuListener extends ListenerAdapter{
+public class OsuListener implements CommandHandler{
+    private static final Headers HEADERS = Headers.of("Accept", "application/json",
+            "User-Agent", "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11");
+    private static final String BASE_URL = GameBot.config.getProperty("osuBaseUrl", "https://osu.ppy.sh/api/");
+    private static final Template PLAYER_INFO = Template.compile("__**~ {} ~**__\n\n"
+            + "Level: {}\nPlay Count: {}\nGlobal Rank: {}\nPerformance Points: {}\nAccuracy: {}");
+    private final LoadingCache<String, JSONArray> userCache = CacheBuilder.newBuilder()
+            .refreshAfterWrite(Long.parseLong(GameBot.config.getProperty("osuCacheRefreshMinutes", "5")), TimeUnit.MINUTES)
+            .expireAfterWrite(Long.parseLong(GameBot.config.getProperty("osuCacheExpireMinutes", "60")), TimeUnit.MINUTES)
+            .maximumSize(Long.parseLong(GameBot.config.getProperty("osuCacheSize", "1000")))
+            .recordStats()
+            .build(CacheLoader.asyncReloading(new CacheLoader<String, JSONArray>(){
+                @Override
+                public JSONArray load(String osuName) throws IOException{
+                    //Refreshes are not for anyone waiting so they queue on their own
+                    return makeRequest(osuName, "get_user", RateLimits.BACKGROUND);
+                }
+            }, Executors.newSingleThreadExecutor(CommandExecutor.namedThreads("osu-refresh"))));
+    
+    public OsuListener(){
+        Metrics.gauge(Metrics.name("cache_hit_ratio", "cache", "osu_users"), () -> userCache.stats().hitRate());
+    }
+    
+    /**
+     * registerCommands - Registers the osu! commands with the dispatcher
+     * @param dispatcher - CommandDispatcher to route the commands from
+     */
+    public void registerCommands(CommandDispatcher dispatcher){
+        dispatcher.register(this, "osuPlayer");
+    }
+    
     @Override
-    public void onMessageReceived(MessageReceivedEvent event){
+    public void onCommand(MessageReceivedEvent event, String command, CommandArgs args){
         try {
-            //Get the readable contents of the message
-            String message = event.getMessage().getContentDisplay();
-            //Dont respond to other bots, this bot, and only handle basic commands
-            if (event.getAuthor().isBot() || !message.startsWith(GameBot.config.getProperty("prefix") + "osu")) return;
-            //Split the args on a space to get them all
-            ArrayList<String> args = new ArrayList<>(Arrays.asList(message.split(" ")));
-            //Get the command without the prefix
-            String command = args.get(0).substring(1);
-            //Remove the command from the argument list
-            args.remove(0);
             //Geth the amount of arguments given
             int numArgs = args.size();
             //Hold current json
             JSONObject playerJson;
-            StringBuilder outputString = new StringBuilder();
             //Switch used to process the command given
             switch(command){
                 case "osuPlayer":
-                    //Must have a summoner to search for
+                    //Must have a player to search for
                     if(numArgs < 1){
-                        event.getChannel().sendMessage("**Usage: !lol <Summoner_Name>**").queue();
+                        Replies.send(event.getChannel(), "**Usage: !osuPlayer <osu!_name>**");
+                        break;
+                    }
+                    String osuName = args.rest(0).toString();
+                    String guildKey = RateLimits.guildKey(event);
+                    JSONArray users = userCache.get(osuName.trim().toLowerCase(), () -> makeRequest(osuName, "get_user", guildKey));
+                    //An unknown user gives back an empty array
+                    if(users.length() == 0){
+                        Replies.send(event.getChannel(), "Invalid player name! **" + osuName + "** could not be found");
                         break;
                     }
-                    String osuName = StringUtils.join(args, ' ');
-                    playerJson = makeRequest( osuName, "get_user");
-                    System.out.println(playerJson);
+                    playerJson = users.getJSONObject(0);
                     //Send a message in the channel it was recieved
-                    event.getChannel().sendMessage(playerInfo(playerJson)).queue();
+                    Replies.send(event.getChannel(), playerInfo(playerJson));
+            }
+        } catch (ExecutionException | UncheckedExecutionException | JSONException ex) {
+            //Tell the user to come back later if the API is too busy
+            if(ex.getCause() instanceof BusyException){
+                Replies.send(event.getChannel(), ex.getCause().getMessage());
+                return;
             }
-        } catch (ProtocolException ex) {
-            Logger.getLogger(OsuListener.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (IOException ex) {
             Logger.getLogger(OsuListener.class.getName()).log(Level.SEVERE, null, ex);
+            Replies.send(event.getChannel(), "Could not get the osu! player right now, try again later.");
         }
     }
     
-         /**
-     * makeRequest - Makes a request to the FortniteTracker API to get the given players information
-     * @param platform - A String indicating the platform the player is on
-     * @param epicName - A String of the players EpicGames name
-     * @return obj - A JSONObject containing all the player information given from the API 
+    /**
+     * makeRequest - Makes a request to the osu! API to get the given users information
+     * @param user - A String of the users osu! name
+     * @param endpoint - A String of the API endpoint to request
+     * @param guildKey - key of the guild the request is for
+     * @return JSONArray - A JSONArray containing the user information given from the API 
      */
-    private JSONObject makeRequest(String user, String endpoint) throws MalformedURLException, ProtocolException, IOException{
+    private JSONArray makeRequest(String user, String endpoint, String guildKey) throws IOException{
         //Replace spaces for proper url
         user = user.replace(" ", "%20");
         String urlString;
-        urlString = "https://osu.ppy.sh/api/" + endpoint + "?u=" + user + "&k=" + GameBot.config.getProperty("osuKey");
-        URL url = new URL(urlString);
-        //Make sure to throttle if needed
-        //throttle.acquire();
-        //Create Connection
-        System.out.println(user);
-        HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-        con.setRequestMethod("GET");
-        con.setRequestProperty("Accept", "application/json");
-        con.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11");
-        
-        int responseCode = con.getResponseCode();
-        
-        System.out.println("\nSending 'GET' request to URL : " + urlString);
-        System.out.println("Response Code : " + responseCode);
-        //Create json from outputed lines
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String inputLine;
-        StringBuilder response = new StringBuilder();
-        while ((inputLine = in.readLine()) != null) {
-           response.append(inputLine);
-        }
-        in.close();
-        String newResponse = response.substring(1, response.length());
-        JSONObject obj= new JSONObject(newResponse);
-        return obj;
+        urlString = BASE_URL + endpoint + "?u=" + user + "&k=" + GameBot.config.getProperty("osuKey");
+        //Wait for a permit, turned away if the API is too busy
+        RateLimits.OSU.await(guildKey);
+        return ApiClient.get(urlString, HEADERS, ApiClient::parseArray, RateLimits.OSU);
     }
     
-    private String playerInfo(JSONObject playerJson){
-        StringBuilder header = new StringBuilder();
-        //Format the players header
+    /**
+     * playerInfo - Formats the info of the given player
+     * @param playerJson - A JSONObject of the players info
+     * @return String - String of the formatted output
+     */
+    String playerInfo(JSONObject playerJson){
         String level = playerJson.getString("level");
         String acc= playerJson.getString("accuracy");
         
         int levelDec = level.indexOf(".");
         int accDec = acc.indexOf(".");
         
-        header.append("__**~ ").append(playerJson.getString("username"))
-                .append(" ~**__\n\n")
-                .append("Level: ").append(level.substring(0, levelDec)).append("\n")
-                .append("Play Count: ").append(playerJson.getString("playcount")).append("\n")
-                .append("Global Rank: ").append(playerJson.getString("pp_rank")).append("\n")
-                .append("Performance Points: ").append(playerJson.getString("pp_raw")).append("\n")
-                .append("Accuracy: ").append(acc.substring(0, accDec+3));
-        return header.toString();
+        return PLAYER_INFO.render(playerJson.getString("username"), level.substring(0, levelDec),
+                playerJson.getString("playcount"), playerJson.getString("pp_rank"),
+                playerJson.getString("pp_raw"), acc.substring(0, accDec+3));
     }
     
 }
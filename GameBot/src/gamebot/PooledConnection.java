@@ -0,0 +1,135 @@
+package gamebot;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Purpose: A database connection held by the DatabaseOps pool along with the
+ * prepared statements that have been made on it, so each statement is only
+ * prepared once per connection.
+ *
+ * @author Colin Keys
+ *
+ * Variables                Description
+ *
+ * private static final
+ *
+ * MAX_STATEMENTS           Number of prepared statements kept per connection
+ *
+ * private final
+ *
+ * connection               Connection to the database
+ * statements               LinkedHashMap - keys are sql strings, values are their prepared statements
+ *
+ * private volatile
+ *
+ * lastUsed                 System.nanoTime the connection was last returned to the pool, read by the evictor
+ *
+ */
+class PooledConnection {
+    private static final int MAX_STATEMENTS = 20;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private volatile long lastUsed = System.nanoTime();
+
+    PooledConnection(Connection connection){
+        this.connection = connection;
+        //Least recently used statements are closed once there are too many
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+                if(size() <= MAX_STATEMENTS)
+                    return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * prepare - Gets the prepared statement for the given sql, preparing it
+     * the first time it is used on this connection
+     * @param sql - the sql of the statement
+     * @return PreparedStatement - the statement with its parameters cleared
+     */
+    PreparedStatement prepare(String sql) throws SQLException{
+        PreparedStatement statement = statements.get(sql);
+        if(statement == null){
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        else
+            statement.clearParameters();
+        return statement;
+    }
+
+    /**
+     * getConnection - Gets the underlying connection
+     * @return Connection - the connection to the database
+     */
+    Connection getConnection(){
+        return connection;
+    }
+
+    /**
+     * touch - Marks the connection as used now
+     */
+    void touch(){
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * idleNanos - Gets how long it has been since the connection was last used
+     * @return long - nanoseconds since the connection was used
+     */
+    long idleNanos(){
+        return System.nanoTime() - lastUsed;
+    }
+
+    /**
+     * isValid - Checks that the connection can still be used
+     * @param timeoutSeconds - seconds to wait for the database to answer
+     * @return Boolean - true if the connection still works
+     */
+    boolean isValid(int timeoutSeconds){
+        try{
+            return !connection.isClosed() && connection.isValid(timeoutSeconds);
+        }
+        catch(SQLException ex){
+            return false;
+        }
+    }
+
+    /**
+     * close - Closes the cached statements and the connection
+     */
+    void close(){
+        for(PreparedStatement statement : statements.values())
+            closeQuietly(statement);
+        statements.clear();
+        try{
+            connection.close();
+        }
+        catch(SQLException ex){
+            Logger.getLogger(PooledConnection.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * closeQuietly - Closes the given statement, logging any failure
+     * @param statement - the statement to close
+     */
+    private static void closeQuietly(PreparedStatement statement){
+        try{
+            statement.close();
+        }
+        catch(SQLException ex){
+            Logger.getLogger(PooledConnection.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package gamebot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Headers;
+
+/**
+ * Purpose: Hands out permits to call one upstream API. Permits are given out
+ * at the buckets rate without blocking the caller. A bucket that sits idle
+ * saves up to its burst of permits, so a small batch like one player on every
+ * platform goes out together instead of one rate window apart. Requests that
+ * have to wait are queued per guild and released round robin so one busy
+ * guild can not starve the rest. If a request would wait longer than allowed it is turned
+ * away with a BusyException instead. The rate follows the API's responses, it
+ * is halved and paused when the API says to slow down and creeps back up to
+ * the configured rate while requests succeed.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * SCHEDULER            ScheduledExecutorService that releases queued requests
+ * MAX_WAIT_NANOS       Longest a request may wait for a permit before it is turned away
+ * MIN_RATE_FRACTION    Lowest fraction of the configured rate the bucket slows to
+ * RECOVERY_FRACTION    Fraction of the configured rate added back for each success
+ * DEFAULT_RETRY_SECONDS    Seconds to pause when the API gives no usable Retry-After
+ *
+ * private final
+ *
+ * name                 Readable name of the upstream, used in busy replies
+ * label                Short name of the upstream, used in metric names
+ * maxRate              Configured permits per second
+ * burst                Most permits that can be given out at once after the bucket sits idle
+ * waiting              LinkedHashMap of the queued requests of each guild, in round robin order
+ *
+ * private
+ *
+ * rate                 Current permits per second
+ * nextPermit           System.nanoTime the next permit would be given out with no burst left, the
+ *                      burst lets permits go out up to burst - 1 intervals before it
+ * pausedUntil          System.nanoTime the API asked to be left alone until
+ * queued               Number of requests waiting in every guilds queue
+ * scheduled            True if a release of the queue is already scheduled
+ * used                 True once a permit has been asked for and the buckets gauges are registered
+ *
+ */
+public final class RateLimitBucket {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(CommandExecutor.namedThreads("rate-limits"));
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(Long.parseLong(GameBot.config.getProperty("rateLimitMaxWaitSeconds", "10")));
+    private static final double MIN_RATE_FRACTION = 1.0 / 16;
+    private static final double RECOVERY_FRACTION = 1.0 / 20;
+    private static final long DEFAULT_RETRY_SECONDS = 1;
+    private final String name;
+    private final String label;
+    private final double maxRate;
+    private final int burst;
+    private final Map<String, ArrayDeque<CompletableFuture<Void>>> waiting = new LinkedHashMap<>();
+    private double rate;
+    private long nextPermit = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+    private int queued;
+    private boolean scheduled;
+    private boolean used;
+
+    /**
+     * @param name - readable name of the upstream
+     * @param label - short name of the upstream, used in metric names
+     * @param permitsPerSecond - most requests a second the upstream allows
+     * @param burst - most requests that can be sent at once after the bucket sits idle, at least 1
+     */
+    public RateLimitBucket(String name, String label, double permitsPerSecond, int burst){
+        this.name = name;
+        this.label = label;
+        this.maxRate = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.rate = permitsPerSecond;
+    }
+
+    /**
+     * markUsed - Registers the buckets gauges the first time a permit is asked for,
+     * so upstreams the bot never calls do not fill the metrics
+     */
+    private void markUsed(){
+        if(used)
+            return;
+        used = true;
+        Metrics.gauge(Metrics.name("rate_limit_queued", "upstream", label), this::getQueued);
+        Metrics.gauge(Metrics.name("rate_limit_permits_per_second", "upstream", label), this::getRate);
+    }
+
+    /**
+     * acquire - Asks for a permit to call the API. Never blocks, the permit is
+     * given when the future completes.
+     * @param guildKey - key of the guild the request is for, requests are queued fairly between keys
+     * @return CompletableFuture - completes once the request may be sent, or fails
+     * with a BusyException if it would have to wait too long
+     */
+    public CompletableFuture<Void> acquire(String guildKey){
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        long now = System.nanoTime();
+        synchronized(this){
+            markUsed();
+            long wait = waitNanos(now, 1);
+            if(wait > MAX_WAIT_NANOS){
+                Metrics.increment(Metrics.name("rate_limit_rejected_total", "upstream", label));
+                permit.completeExceptionally(busy(wait));
+                return permit;
+            }
+            //Nothing ahead of it and a permit is free
+            if(queued == 0 && wait <= 0){
+                nextPermit = Math.max(nextPermit, now) + interval();
+                Metrics.recordNanos(Metrics.name("rate_limit_wait_seconds", "upstream", label), 0);
+                permit.complete(null);
+                return permit;
+            }
+            waiting.computeIfAbsent(guildKey, (key) -> new ArrayDeque<>()).add(permit);
+            queued++;
+            schedule(now);
+        }
+        permit.thenRun(() -> Metrics.recordNanos(Metrics.name("rate_limit_wait_seconds", "upstream", label), System.nanoTime() - now));
+        return permit;
+    }
+
+    /**
+     * await - Waits for a permit, for callers that make the request on their own thread.
+     * The wait is never longer than the buckets max wait.
+     * @param guildKey - key of the guild the request is for
+     */
+    public void await(String guildKey) throws BusyException{
+        try{
+            acquire(guildKey).get();
+        }
+        catch(ExecutionException ex){
+            throw (BusyException)ex.getCause();
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw busy(MAX_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * ensureCapacity - Turns a batch of requests away up front if they could not all
+     * get a permit in time, so a batch is not left half done
+     * @param permits - number of requests in the batch
+     */
+    public synchronized void ensureCapacity(int permits) throws BusyException{
+        markUsed();
+        long wait = waitNanos(System.nanoTime(), permits);
+        if(wait > MAX_WAIT_NANOS){
+            Metrics.increment(Metrics.name("rate_limit_rejected_total", "upstream", label));
+            throw busy(wait);
+        }
+    }
+
+    /**
+     * record - Adjusts the rate from a response of the API. A 429 or a Retry-After
+     * pauses the bucket and halves the rate, no remaining quota pauses it until
+     * the quota resets, and anything else lets the rate recover a little.
+     * @param code - HTTP status code of the response
+     * @param headers - Headers of the response
+     */
+    public synchronized void record(int code, Headers headers){
+        long now = System.nanoTime();
+        String retryAfter = headers.get("Retry-After");
+        if(code == 429 || retryAfter != null){
+            pause(now, TimeUnit.SECONDS.toNanos(parseSeconds(retryAfter, DEFAULT_RETRY_SECONDS)));
+            rate = Math.max(maxRate * MIN_RATE_FRACTION, rate / 2);
+            return;
+        }
+        if("0".equals(headers.get("X-RateLimit-Remaining"))){
+            long reset = parseSeconds(headers.get("X-RateLimit-Reset"), DEFAULT_RETRY_SECONDS);
+            //Reset is either seconds from now or an epoch time in seconds
+            long epochSeconds = System.currentTimeMillis() / 1000;
+            if(reset > epochSeconds / 2)
+                reset = Math.max(0, reset - epochSeconds);
+            pause(now, TimeUnit.SECONDS.toNanos(reset));
+            return;
+        }
+        if(code < 400)
+            rate = Math.min(maxRate, rate + maxRate * RECOVERY_FRACTION);
+    }
+
+    /**
+     * getRate - Gets the current rate of the bucket
+     * @return double - permits per second
+     */
+    public synchronized double getRate(){
+        return rate;
+    }
+
+    /**
+     * getQueued - Gets the number of requests waiting for a permit
+     * @return int - the number of queued requests
+     */
+    public synchronized int getQueued(){
+        return queued;
+    }
+
+    /**
+     * getMaxBatch - Gets the biggest batch an idle bucket can take at the configured
+     * rate without turning it away, for callers that size their batches
+     * @return int - the burst plus the permits given out within the max wait
+     */
+    public int getMaxBatch(){
+        return burst + (int)(MAX_WAIT_NANOS / (long)(TimeUnit.SECONDS.toNanos(1) / maxRate));
+    }
+
+    /**
+     * getLabel - Gets the short name of the upstream
+     * @return String - the label used in metric names
+     */
+    public String getLabel(){
+        return label;
+    }
+
+    /**
+     * release - Gives permits to queued requests that are due, one guild at a time,
+     * and schedules itself again if any are left
+     */
+    private void release(){
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        synchronized(this){
+            scheduled = false;
+            long now = System.nanoTime();
+            while(queued > 0 && permitAt() <= now){
+                CompletableFuture<Void> permit = next();
+                //Requests given up on do not use a permit
+                if(permit.isDone())
+                    continue;
+                nextPermit = Math.max(nextPermit, now) + interval();
+                ready.add(permit);
+            }
+            if(queued > 0)
+                schedule(now);
+        }
+        //Completed outside the lock since callers continue on this thread
+        for(CompletableFuture<Void> permit : ready)
+            permit.complete(null);
+    }
+
+    /**
+     * next - Takes the next queued request, moving its guild to the back of the line
+     * @return CompletableFuture - the permit of the request
+     */
+    private CompletableFuture<Void> next(){
+        Iterator<Map.Entry<String, ArrayDeque<CompletableFuture<Void>>>> guilds = waiting.entrySet().iterator();
+        Map.Entry<String, ArrayDeque<CompletableFuture<Void>>> guild = guilds.next();
+        guilds.remove();
+        CompletableFuture<Void> permit = guild.getValue().poll();
+        if(!guild.getValue().isEmpty())
+            waiting.put(guild.getKey(), guild.getValue());
+        queued--;
+        return permit;
+    }
+
+    /**
+     * schedule - Schedules a release for when the next permit is free, if one is not already
+     * @param now - the current System.nanoTime
+     */
+    private void schedule(long now){
+        if(scheduled)
+            return;
+        scheduled = true;
+        SCHEDULER.schedule(this::release, Math.max(0, permitAt() - now), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * pause - Holds every permit until the API is ready again
+     * @param now - the current System.nanoTime
+     * @param nanos - how long to pause for
+     */
+    private void pause(long now, long nanos){
+        pausedUntil = Math.max(pausedUntil, now + nanos);
+        //Use up the saved burst so the API is not hit all at once when the pause ends
+        nextPermit = Math.max(nextPermit, pausedUntil + burstNanos());
+    }
+
+    /**
+     * waitNanos - Estimates how long new requests would wait for their permits
+     * @param now - the current System.nanoTime
+     * @param permits - number of requests
+     * @return long - nanoseconds until the last of the requests gets its permit
+     */
+    private long waitNanos(long now, int permits){
+        long last = Math.max(nextPermit, now) + (long)(queued + permits - 1) * interval() - burstNanos();
+        return Math.max(0, Math.max(last, pausedUntil) - now);
+    }
+
+    /**
+     * permitAt - Gets when the next permit can be given out, using the burst
+     * @return long - System.nanoTime of the next permit
+     */
+    private long permitAt(){
+        return Math.max(nextPermit - burstNanos(), pausedUntil);
+    }
+
+    /**
+     * burstNanos - Gets how far ahead of the rate the burst lets permits go out
+     * @return long - nanoseconds of burst - 1 intervals
+     */
+    private long burstNanos(){
+        return (long)(burst - 1) * interval();
+    }
+
+    /**
+     * interval - Gets the time between permits at the current rate
+     * @return long - nanoseconds between permits
+     */
+    private long interval(){
+        return (long)(TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    /**
+     * busy - Creates the exception a turned away request fails with
+     * @param waitNanos - how long the request would have waited
+     * @return BusyException - with the wait rounded up to whole seconds
+     */
+    private BusyException busy(long waitNanos){
+        return new BusyException(name, Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * parseSeconds - Reads a header given in whole seconds
+     * @param value - the header value, may be null
+     * @param fallback - seconds to use if there is no usable value
+     * @return long - the seconds
+     */
+    private static long parseSeconds(String value, long fallback){
+        if(value == null)
+            return fallback;
+        try{
+            return Math.max(0, (long)Double.parseDouble(value.trim()));
+        }
+        catch(NumberFormatException ex){
+            //Retry-After can also be an HTTP date
+            return fallback;
+        }
+    }
+}
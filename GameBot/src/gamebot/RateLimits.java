@@ -0,0 +1,74 @@
+package gamebot;
+
+import com.merakianalytics.orianna.types.common.Region;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * Purpose: The rate limit buckets of every upstream API, one for FortniteTracker,
+ * one for osu! and one for each Riot region since Riot limits each region on
+ * its own.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * public static final
+ *
+ * FORTNITE             RateLimitBucket of the FortniteTracker API
+ * OSU                  RateLimitBucket of the osu! API
+ * BACKGROUND           Guild key of requests no user is waiting on, like cache refreshes
+ *
+ * private static final
+ *
+ * RIOT                 EnumMap of the RateLimitBucket of each Riot region
+ *
+ */
+public final class RateLimits {
+    public static final RateLimitBucket FORTNITE = new RateLimitBucket("FortniteTracker", "fortnite",
+            Double.parseDouble(GameBot.config.getProperty("fnRequestsPerSecond", "0.5")),
+            Integer.parseInt(GameBot.config.getProperty("fnBurst", "3")));
+    public static final RateLimitBucket OSU = new RateLimitBucket("osu!", "osu",
+            Double.parseDouble(GameBot.config.getProperty("osuRequestsPerSecond", "5")),
+            Integer.parseInt(GameBot.config.getProperty("osuBurst", "5")));
+    public static final String BACKGROUND = "background";
+    private static final Map<Region, RateLimitBucket> RIOT = createRiotBuckets();
+
+    private RateLimits(){
+    }
+
+    /**
+     * riot - Gets the bucket of a Riot region
+     * @param region - the Riot region
+     * @return RateLimitBucket - the regions bucket
+     */
+    public static RateLimitBucket riot(Region region){
+        return RIOT.get(region);
+    }
+
+    /**
+     * guildKey - Gets the key requests from a message are queued under
+     * @param event - MessageReceivedEvent of the command
+     * @return String - the guild id, or the user for direct messages
+     */
+    public static String guildKey(MessageReceivedEvent event){
+        if(event.getGuild() != null)
+            return event.getGuild().getId();
+        return "dm:" + event.getAuthor().getId();
+    }
+
+    /**
+     * createRiotBuckets - Creates a bucket for every Riot region
+     * @return riot - EnumMap of regions to their buckets
+     */
+    private static Map<Region, RateLimitBucket> createRiotBuckets(){
+        double rate = Double.parseDouble(GameBot.config.getProperty("riotRequestsPerSecond", "20"));
+        int burst = Integer.parseInt(GameBot.config.getProperty("riotBurst", "20"));
+        Map<Region, RateLimitBucket> riot = new EnumMap<>(Region.class);
+        for(Region region : Region.values())
+            riot.put(region, new RateLimitBucket("Riot", "riot_" + region.name().toLowerCase(Locale.ROOT), rate, burst));
+        return riot;
+    }
+}
@@ -0,0 +1,137 @@
+package gamebot;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.dv8tion.jda.core.entities.MessageChannel;
+
+/**
+ * Purpose: Sends replies to a channel, splitting any reply longer than Discord
+ * allows into several messages. Splits are made at line breaks when possible
+ * so a line of output is not cut in half, and a code block cut by a split is
+ * closed at the end of one message and opened again at the start of the next.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * public static final
+ *
+ * MAX_LENGTH           Most characters Discord allows in one message
+ *
+ * private static final
+ *
+ * FENCE                Marks the start and end of a code block
+ *
+ * private static volatile
+ *
+ * sender               Sender every part of a reply goes through
+ *
+ */
+public final class Replies {
+    public static final int MAX_LENGTH = 2000;
+    private static final String FENCE = "```";
+    private static volatile Sender sender = (channel, part) -> channel.sendMessage(part).queue();
+
+    private Replies(){
+    }
+
+    /**
+     * Purpose: Sends one message of a reply. Replaced by the load test so replies
+     * are timed instead of sent to Discord.
+     */
+    interface Sender {
+        void send(MessageChannel channel, String part);
+    }
+
+    /**
+     * setSender - Replaces how the parts of replies are sent
+     * @param replacement - Sender to send every part with
+     */
+    static void setSender(Sender replacement){
+        sender = replacement;
+    }
+
+    /**
+     * send - Sends the text to the channel, in as many messages as it needs
+     * @param channel - MessageChannel to send the reply in
+     * @param text - the reply
+     */
+    public static void send(MessageChannel channel, CharSequence text){
+        for(String part : split(text))
+            sender.send(channel, part);
+    }
+
+    /**
+     * split - Splits the text into parts that each fit in one message
+     * @param text - the text to split
+     * @return List - the parts in order
+     */
+    public static List<String> split(CharSequence text){
+        List<String> parts = new ArrayList<>(text.length() / MAX_LENGTH + 1);
+        int start = 0;
+        //Opening line of the code block the next part starts inside of, null if none
+        String reopen = null;
+        while(true){
+            String prefix = reopen == null ? "" : reopen + "\n";
+            if(text.length() - start <= MAX_LENGTH - prefix.length()){
+                if(start < text.length())
+                    parts.add(prefix + text.subSequence(start, text.length()));
+                return parts;
+            }
+            //Leave room to close a code block the split lands in
+            int end = start + MAX_LENGTH - prefix.length() - FENCE.length() - 1;
+            //Break after the last line that fits, or at the limit if there is none
+            int lineBreak = lastLineBreak(text, start, end);
+            if(lineBreak > start)
+                end = lineBreak + 1;
+            CharSequence chunk = text.subSequence(start, end);
+            reopen = openFence(chunk, reopen);
+            StringBuilder part = new StringBuilder(MAX_LENGTH).append(prefix).append(chunk);
+            if(reopen != null){
+                if(part.charAt(part.length() - 1) != '\n')
+                    part.append('\n');
+                part.append(FENCE);
+            }
+            parts.add(part.toString());
+            start = end;
+        }
+    }
+
+    /**
+     * openFence - Finds the code block left open at the end of a part
+     * @param chunk - the text of the part
+     * @param open - opening line of the code block the part starts inside of, null if none
+     * @return String - opening line of the code block still open, with its language, null if none
+     */
+    private static String openFence(CharSequence chunk, String open){
+        String text = chunk.toString();
+        int at = text.indexOf(FENCE);
+        while(at >= 0){
+            if(open != null)
+                open = null;
+            else{
+                //Keep the language given after the fence, if any
+                int lineEnd = text.indexOf('\n', at);
+                String language = text.substring(at + FENCE.length(), lineEnd < 0 ? text.length() : lineEnd);
+                open = FENCE + (language.matches("[A-Za-z0-9+#-]{0,16}") ? language : "");
+            }
+            at = text.indexOf(FENCE, at + FENCE.length());
+        }
+        return open;
+    }
+
+    /**
+     * lastLineBreak - Finds the last line break within a range of the text
+     * @param text - the text to search
+     * @param start - start of the range, inclusive
+     * @param end - end of the range, exclusive
+     * @return int - index of the line break, -1 if there is none
+     */
+    private static int lastLineBreak(CharSequence text, int start, int end){
+        for(int i = end - 1; i >= start; i--){
+            if(text.charAt(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,168 @@
+package gamebot;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.merakianalytics.orianna.Orianna;
+import com.merakianalytics.orianna.types.common.Region;
+import com.merakianalytics.orianna.types.core.summoner.Summoner;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Purpose: Runs calls to the Riot API partitioned by region. Each region has
+ * its own rate limit bucket and its own threads, so a burst of lookups on one
+ * region never holds up another. Summoner names are resolved to ids once and
+ * kept, so looking up the same summoner again skips the by name call.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * THREADS              Number of threads each region runs its calls on
+ * POOLS                EnumMap of the ThreadPoolExecutor of each region
+ * SUMMONER_IDS         Cache of summoner ids keyed on region and normalized name
+ *
+ */
+public final class RiotScheduler {
+    private static final int THREADS = Integer.parseInt(GameBot.config.getProperty("riotRegionThreads", "4"));
+    private static final Map<Region, ThreadPoolExecutor> POOLS = createPools();
+    private static final Cache<String, Long> SUMMONER_IDS = CacheBuilder.newBuilder()
+            .expireAfterWrite(Long.parseLong(GameBot.config.getProperty("riotSummonerCacheMinutes", "60")), TimeUnit.MINUTES)
+            .maximumSize(Long.parseLong(GameBot.config.getProperty("riotSummonerCacheSize", "5000")))
+            .recordStats()
+            .build();
+
+    static{
+        Metrics.gauge(Metrics.name("cache_hit_ratio", "cache", "riot_summoner_ids"), () -> SUMMONER_IDS.stats().hitRate());
+    }
+
+    private RiotScheduler(){
+    }
+
+    /**
+     * submit - Queues a call on the regions bucket and runs it on the regions threads
+     * once it has a permit. Never blocks.
+     * @param region - the region the call is made to
+     * @param guildKey - key of the guild the call is for
+     * @param call - the Riot API call
+     * @return CompletableFuture - completes with the result of the call, or fails with
+     * a BusyException if the region is too busy
+     */
+    public static <T> CompletableFuture<T> submit(Region region, String guildKey, Supplier<T> call){
+        String upstream = RateLimits.riot(region).getLabel();
+        return RateLimits.riot(region).acquire(guildKey).thenApplyAsync((permit) -> {
+            long start = System.nanoTime();
+            boolean success = false;
+            try{
+                T result = call.get();
+                success = true;
+                return result;
+            }
+            finally{
+                ApiClient.recordRequest(upstream, start, success);
+            }
+        }, POOLS.get(region));
+    }
+
+    /**
+     * call - Makes a call on the regions threads and waits for its result
+     * @param region - the region the call is made to
+     * @param guildKey - key of the guild the call is for
+     * @param call - the Riot API call
+     * @return T - the result of the call
+     */
+    public static <T> T call(Region region, String guildKey, Supplier<T> call) throws BusyException{
+        try{
+            return submit(region, guildKey, call).get();
+        }
+        catch(ExecutionException ex){
+            if(ex.getCause() instanceof BusyException)
+                throw (BusyException)ex.getCause();
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+        catch(InterruptedException ex){
+            //The command was cancelled while waiting
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * summoner - Gets a loaded summoner by name, by id if the name was resolved before
+     * @param region - the region the summoner plays on
+     * @param summonerName - the given summoner name
+     * @param guildKey - key of the guild the lookup is for
+     * @return Summoner - the loaded summoner, null if they do not exist
+     */
+    public static Summoner summoner(Region region, String summonerName, String guildKey) throws BusyException{
+        String key = region.name() + ":" + normalize(summonerName);
+        Long id = SUMMONER_IDS.getIfPresent(key);
+        Summoner summoner = call(region, guildKey, () -> load(id != null
+                ? Orianna.summonerWithId(id).withRegion(region).get()
+                : Orianna.summonerNamed(summonerName).withRegion(region).get()));
+        //Only summoners that exist are kept
+        if(summoner != null && id == null)
+            SUMMONER_IDS.put(key, summoner.getId());
+        return summoner;
+    }
+
+    /**
+     * load - Loads a summoner on the calling thread
+     * @param summoner - the summoner to load
+     * @return Summoner - the summoner, null if they do not exist
+     */
+    private static Summoner load(Summoner summoner){
+        //A summoner that does not exist has no level
+        try{
+            summoner.getLevel();
+        }
+        catch(NullPointerException e){
+            return null;
+        }
+        return summoner;
+    }
+
+    /**
+     * normalize - Normalizes a summoner name the way Riot compares them
+     * @param summonerName - the given summoner name
+     * @return String - the name in lower case without whitespace
+     */
+    private static String normalize(String summonerName){
+        StringBuilder normalized = new StringBuilder(summonerName.length());
+        for(int i = 0; i < summonerName.length(); i++){
+            char c = summonerName.charAt(i);
+            if(!Character.isWhitespace(c))
+                normalized.append(c);
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * createPools - Creates the threads of every region. Idle threads time out so
+     * regions nobody looks up cost nothing.
+     * @return pools - EnumMap of regions to their ThreadPoolExecutor
+     */
+    private static Map<Region, ThreadPoolExecutor> createPools(){
+        Map<Region, ThreadPoolExecutor> pools = new EnumMap<>(Region.class);
+        for(Region region : Region.values()){
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), CommandExecutor.namedThreads("riot-" + region.name().toLowerCase(Locale.ROOT)));
+            pool.allowCoreThreadTimeOut(true);
+            pools.put(region, pool);
+            Metrics.gauge(Metrics.name("riot_pool_queue_depth", "region", region.name().toLowerCase(Locale.ROOT)), () -> pool.getQueue().size());
+        }
+        return pools;
+    }
+}
@@ -0,0 +1,87 @@
+package gamebot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Purpose: A reply format compiled once into its fixed text segments. Each {}
+ * in the pattern is a slot that is filled in order when the template is
+ * rendered, and the output is sized up front from the fixed text so it does
+ * not have to grow while it is built.
+ *
+ * @author Colin Keys
+ *
+ * Variables            Description
+ *
+ * private static final
+ *
+ * SLOT_ESTIMATE        Characters expected for each filled in slot when sizing the output
+ *
+ * private final
+ *
+ * segments             Fixed text between the slots, one more than the number of slots
+ * fixedLength          Total length of the fixed text
+ *
+ */
+public final class Template {
+    private static final int SLOT_ESTIMATE = 16;
+    private final String[] segments;
+    private final int fixedLength;
+
+    private Template(String[] segments){
+        this.segments = segments;
+        int length = 0;
+        for(String segment : segments)
+            length += segment.length();
+        this.fixedLength = length;
+    }
+
+    /**
+     * compile - Splits a pattern into its fixed text and slots
+     * @param pattern - the reply format, with {} wherever a value goes
+     * @return Template - the compiled template
+     */
+    public static Template compile(String pattern){
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int slot;
+        while((slot = pattern.indexOf("{}", start)) >= 0){
+            segments.add(pattern.substring(start, slot));
+            start = slot + 2;
+        }
+        segments.add(pattern.substring(start));
+        return new Template(segments.toArray(new String[0]));
+    }
+
+    /**
+     * render - Fills the slots with the given values
+     * @param values - a value for each slot, in order
+     * @return String - the filled in template
+     */
+    public String render(Object... values){
+        return renderTo(new StringBuilder(estimate()), values).toString();
+    }
+
+    /**
+     * renderTo - Fills the slots with the given values, adding the result to out
+     * @param out - StringBuilder to add the filled in template to
+     * @param values - a value for each slot, in order
+     * @return StringBuilder - out, for chaining
+     */
+    public StringBuilder renderTo(StringBuilder out, Object... values){
+        if(values.length != segments.length - 1)
+            throw new IllegalArgumentException("Expected " + (segments.length - 1) + " values but got " + values.length);
+        out.append(segments[0]);
+        for(int i = 0; i < values.length; i++)
+            out.append(values[i]).append(segments[i + 1]);
+        return out;
+    }
+
+    /**
+     * estimate - Gets the expected length of a render of this template
+     * @return int - the fixed text length plus an estimate for each slot
+     */
+    public int estimate(){
+        return fixedLength + (segments.length - 1) * SLOT_ESTIMATE;
+    }
+}
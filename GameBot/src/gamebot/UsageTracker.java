@@ -0,0 +1,173 @@
+package gamebot;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+
+/**
+ * Purpose: Counts command uses in memory and writes them to the database in
+ * batches from a background thread, so tracked commands do not wait on the
+ * database. Counts are flushed every few seconds, after enough uses, and on
+ * shutdown.
+ *
+ * @author Colin Keys
+ *
+ * Variables                Description
+ *
+ * private final
+ *
+ * dbOps                    DatabaseOps object for database operations
+ * flushEvents              Number of uses that trigger a flush before the interval
+ * flusher                  ScheduledExecutorService that writes the counts
+ * swapLock                 StampedLock so a flush can swap out the counts without losing uses
+ * pendingEvents            Number of uses since the last flush
+ *
+ * private
+ *
+ * counts                   ConcurrentHashMap - keys are the user and command, values are their uses since the last flush
+ *
+ */
+public class UsageTracker {
+    private final DatabaseOps dbOps;
+    private final int flushEvents;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(CommandExecutor.namedThreads("usage-flush"));
+    private final StampedLock swapLock = new StampedLock();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private volatile ConcurrentHashMap<UsageKey, LongAdder> counts = new ConcurrentHashMap<>();
+
+    /**
+     * @param dbOps - DatabaseOps to write the counts with
+     * @param flushSeconds - seconds between flushes
+     * @param flushEvents - number of uses that trigger a flush before the interval
+     */
+    public UsageTracker(DatabaseOps dbOps, long flushSeconds, int flushEvents){
+        this.dbOps = dbOps;
+        this.flushEvents = flushEvents;
+        flusher.scheduleWithFixedDelay(this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * increment - Counts one use of the command by the author of the event
+     * @param event - MessageReceivedEvent instance generated when the bot
+     * a message the bot can read it received.
+     * @param command - command called by the user
+     */
+    public void increment(MessageReceivedEvent event, String command){
+        add(new UsageKey(event.getAuthor().getName(), event.getAuthor().getDiscriminator(), command), 1);
+        //Flush early once enough uses have built up
+        if(pendingEvents.incrementAndGet() == flushEvents)
+            flusher.execute(this::flush);
+    }
+
+    /**
+     * add - Adds the given number of uses to the count for the key
+     * @param key - the user and command
+     * @param uses - number of uses to add
+     */
+    private void add(UsageKey key, long uses){
+        long stamp = swapLock.readLock();
+        try{
+            counts.computeIfAbsent(key, k -> new LongAdder()).add(uses);
+        }
+        finally{
+            swapLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * flush - Writes every count since the last flush to the database as one batch.
+     * Counts that fail to write are kept for the next flush.
+     */
+    public synchronized void flush(){
+        //Swap in an empty map so uses keep being counted while the batch is written
+        ConcurrentHashMap<UsageKey, LongAdder> batch;
+        long stamp = swapLock.writeLock();
+        try{
+            batch = counts;
+            counts = new ConcurrentHashMap<>();
+            pendingEvents.set(0);
+        }
+        finally{
+            swapLock.unlockWrite(stamp);
+        }
+        if(batch.isEmpty()) return;
+        try{
+            dbOps.dbUpdateBatch(batch);
+        }
+        catch(SQLException ex){
+            Logger.getLogger(UsageTracker.class.getName()).log(Level.SEVERE, null, ex);
+            for(Map.Entry<UsageKey, LongAdder> entry : batch.entrySet())
+                add(entry.getKey(), entry.getValue().sum());
+        }
+    }
+
+    /**
+     * shutdown - Stops the background flushes and writes what is left
+     */
+    public void shutdown(){
+        flusher.shutdown();
+        try{
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Purpose: Identifies the counts for one command used by one user
+     *
+     * Variables            Description
+     *
+     * discordName          Discord name of the user
+     * discrim              Discord discriminator of the user
+     * command              command called by the user
+     */
+    public static final class UsageKey {
+        private final String discordName;
+        private final String discrim;
+        private final String command;
+
+        public UsageKey(String discordName, String discrim, String command){
+            this.discordName = discordName;
+            this.discrim = discrim;
+            this.command = command;
+        }
+
+        public String getDiscordName(){
+            return discordName;
+        }
+
+        public String getDiscrim(){
+            return discrim;
+        }
+
+        public String getCommand(){
+            return command;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if(this == other) return true;
+            if(!(other instanceof UsageKey)) return false;
+            UsageKey key = (UsageKey)other;
+            return discordName.equals(key.discordName) && discrim.equals(key.discrim) && command.equals(key.command);
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hash(discordName, discrim, command);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package gamebot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import okhttp3.Headers;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Purpose: Checks that a RateLimitBucket lets a batch within its burst go out
+ * together, spaces the rest at its rate and sizes batches it can take in time.
+ *
+ * @author Colin Keys
+ */
+public class RateLimitBucketTest {
+
+    @Test
+    public void batchWithinBurstGoesOutTogether(){
+        RateLimitBucket bucket = new RateLimitBucket("Test", "test_burst", 0.5, 3);
+        List<CompletableFuture<Void>> permits = acquire(bucket, 3);
+        for(CompletableFuture<Void> permit : permits)
+            assertTrue("permits within the burst are given at once", permit.isDone() && !permit.isCompletedExceptionally());
+        //The burst is used up, the next waits a whole interval
+        assertFalse(bucket.acquire("guild").isDone());
+    }
+
+    @Test
+    public void noBurstSpacesEveryPermit(){
+        RateLimitBucket bucket = new RateLimitBucket("Test", "test_no_burst", 0.5, 1);
+        assertTrue(bucket.acquire("guild").isDone());
+        assertFalse(bucket.acquire("guild").isDone());
+    }
+
+    @Test
+    public void burstPermitsAreNotSlowedByTheRate() throws InterruptedException, ExecutionException{
+        RateLimitBucket bucket = new RateLimitBucket("Test", "test_fast", 0.5, 4);
+        long start = System.nanoTime();
+        for(CompletableFuture<Void> permit : acquire(bucket, 4))
+            permit.get();
+        //Four permits at one every two seconds would take six seconds without the burst
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+
+    @Test
+    public void maxBatchIsAdmitted() throws BusyException{
+        //Three at once and one every two seconds for the ten second max wait
+        RateLimitBucket bucket = new RateLimitBucket("Test", "test_max_batch", 0.5, 3);
+        assertEquals(8, bucket.getMaxBatch());
+        bucket.ensureCapacity(bucket.getMaxBatch());
+        try{
+            bucket.ensureCapacity(bucket.getMaxBatch() + 1);
+            fail("a batch bigger than the max batch can not get its permits in time");
+        }
+        catch(BusyException ex){
+            assertTrue(ex.getRetrySeconds() > 0);
+        }
+    }
+
+    @Test
+    public void slowDownUsesUpTheBurst(){
+        RateLimitBucket bucket = new RateLimitBucket("Test", "test_429", 0.5, 3);
+        bucket.record(429, Headers.of("Retry-After", "1"));
+        assertFalse("a paused bucket gives no permits", bucket.acquire("guild").isDone());
+        assertEquals(0.25, bucket.getRate(), 1e-9);
+    }
+
+    /**
+     * acquire - Asks for permits for one guild
+     * @param bucket - the bucket to ask
+     * @param count - number of permits
+     * @return List - the permits
+     */
+    private static List<CompletableFuture<Void>> acquire(RateLimitBucket bucket, int count){
+        List<CompletableFuture<Void>> permits = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            permits.add(bucket.acquire("guild"));
+        return permits;
+    }
+}
@@ -0,0 +1,59 @@
+package gamebot;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Purpose: Checks that Replies splits long replies into messages Discord takes,
+ * at line breaks, with every code block closed in the message it is opened in.
+ *
+ * @author Colin Keys
+ */
+public class RepliesTest {
+
+    @Test
+    public void shortReplyIsOneMessage(){
+        assertEquals(1, Replies.split("```\nshort\n```").size());
+    }
+
+    @Test
+    public void splitCodeBlockIsClosedAndReopened(){
+        StringBuilder text = new StringBuilder("__**Stats**__\n```java\n");
+        for(int i = 0; i < 300; i++)
+            text.append("line number ").append(i).append('\n');
+        text.append("```");
+        List<String> parts = Replies.split(text);
+        assertTrue(parts.size() > 1);
+        for(int i = 0; i < parts.size(); i++){
+            String part = parts.get(i);
+            assertTrue(part.length() <= Replies.MAX_LENGTH);
+            assertEquals("every part has its code block closed", 0, fences(part) % 2);
+            assertTrue(part.endsWith("\n```"));
+            if(i > 0)
+                assertTrue("the language is kept", part.startsWith("```java\nline number "));
+        }
+    }
+
+    @Test
+    public void lineLongerThanAMessageIsCut(){
+        StringBuilder text = new StringBuilder("```");
+        for(int i = 0; i < 4500; i++)
+            text.append('x');
+        for(String part : Replies.split(text))
+            assertTrue(part.length() <= Replies.MAX_LENGTH);
+    }
+
+    /**
+     * fences - Counts the code block fences in a message
+     * @param part - the message
+     * @return int - number of fences
+     */
+    private static int fences(String part){
+        int count = 0;
+        for(int at = part.indexOf("```"); at >= 0; at = part.indexOf("```", at + 3))
+            count++;
+        return count;
+    }
+}